@@ -26,11 +26,11 @@ import com.appspot.udacity_extras.conference.Conference;
 
 import com.google.android.gms.auth.GoogleAuthUtil;
 import com.google.android.gms.common.GooglePlayServicesUtil;
-import com.google.api.client.extensions.android.http.AndroidHttp;
 import com.google.api.client.extensions.android.json.AndroidJsonFactory;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
+import com.udacity.devrel.training.conference.android.utils.PooledHttpTransport;
 
 import javax.annotation.Nullable;
 
@@ -58,8 +58,8 @@ public class AppConstants {
     public static final JsonFactory JSON_FACTORY = new AndroidJsonFactory();
 
     /**
-     * Class instance of the HTTP transport.
+     * Class instance of the HTTP transport, keeping connections alive between calls.
      */
-    public static final HttpTransport HTTP_TRANSPORT = AndroidHttp.newCompatibleTransport();
+    public static final HttpTransport HTTP_TRANSPORT = new PooledHttpTransport.Builder().build();
 
 }
\ No newline at end of file
@@ -14,79 +14,235 @@
  */
 package com.udacity.devrel.training.conference.android;
 
+import com.udacity.devrel.training.conference.android.utils.CompactConference;
 import com.udacity.devrel.training.conference.android.utils.DecoratedConference;
 
 import android.content.Context;
+import android.os.AsyncTask;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 import android.widget.ImageView;
+import android.widget.ListView;
 import android.widget.TextView;
 
-import com.udacity.devrel.training.conference.android.utils.Utils;
+import com.udacity.devrel.training.conference.android.utils.ConferenceLabels;
+import com.udacity.devrel.training.conference.android.utils.ConferenceListDiff;
+import com.udacity.devrel.training.conference.android.utils.ConferenceRowState;
+import com.udacity.devrel.training.conference.android.utils.TaskExecutors;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  *
  */
 public class ConferenceDataAdapter extends ArrayAdapter<DecoratedConference> {
 
-    private static final String TAG = "ConferenceDataAdapter";
-
     private final Context mContext;
+    private final LayoutInflater mInflater;
+
+    /* lists up to this size are compared on the UI thread, faster than a round trip to a pool */
+    private static final int SYNC_DIFF_MAX_SIZE = 100;
+
+    /* websafe key -> stable row id, for the conferences shown */
+    private final Map<String, Long> mIds = new HashMap<String, Long>();
+    private long mNextId;
+
+    private DiffAsyncTask mDiffTask;
+    private final List<DecoratedConference> mPendingAppends = new ArrayList<DecoratedConference>();
 
     public ConferenceDataAdapter(Context context) {
         super(context, 0);
         this.mContext = context;
+        this.mInflater = LayoutInflater.from(context);
     }
 
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
 
         ViewHolder holder;
-        LayoutInflater inflater = (LayoutInflater) mContext.getSystemService(
-                Context.LAYOUT_INFLATER_SERVICE);
         DecoratedConference decoratedConference = getItem(position);
 
         if (convertView == null) {
-            convertView = inflater.inflate(R.layout.conference_row, null);
+            convertView = mInflater.inflate(R.layout.conference_row, parent, false);
             holder = new ViewHolder();
             holder.titleView = (TextView) convertView.findViewById(R.id.textView1);
             holder.descriptionView = (TextView) convertView.findViewById(R.id.textView2);
             holder.cityAndDateView = (TextView) convertView.findViewById(R.id.textView3);
             holder.registerView = (ImageView) convertView.findViewById(R.id.imageView);
+            holder.registerView.setVisibility(View.GONE);
             convertView.setTag(holder);
         } else {
             holder = (ViewHolder) convertView.getTag();
         }
 
-        holder.titleView.setText(decoratedConference.getConference().getName());
-        holder.descriptionView.setText(decoratedConference.getConference().getDescription());
-        holder.cityAndDateView.setText(decoratedConference.getConference().getCity() + ", " + Utils
-                .getConferenceDate(mContext, decoratedConference.getConference()));
-        holder.registerView
-                .setVisibility(decoratedConference.isRegistered() ? View.VISIBLE : View.GONE);
+        // rows have no checked state of their own before API 11, so highlight selection here
+        boolean selected = parent instanceof ListView
+                && ((ListView) parent).isItemChecked(position);
+        int changed = holder.state.update(decoratedConference, ConferenceLabels.getGeneration(),
+                selected);
+        if ((changed & ConferenceRowState.CONTENT) != 0) {
+            CompactConference conference = decoratedConference.getConference();
+            holder.titleView.setText(conference.getName());
+            // lists are loaded without descriptions, see ConferenceUtils.LIST_FIELDS
+            String description = conference.getDescription();
+            holder.descriptionView.setText(description);
+            holder.descriptionView.setVisibility(
+                    TextUtils.isEmpty(description) ? View.GONE : View.VISIBLE);
+            // prepared off the UI thread, formatted here only after a locale or time zone change
+            holder.cityAndDateView.setText(
+                    ConferenceLabels.getCityAndDateLabel(mContext, decoratedConference));
+        }
+        if ((changed & ConferenceRowState.REGISTRATION) != 0) {
+            holder.registerView.setVisibility(
+                    holder.state.isRegistered() ? View.VISIBLE : View.GONE);
+        }
+        if ((changed & ConferenceRowState.SELECTION) != 0) {
+            convertView.setBackgroundResource(
+                    holder.state.isSelected() ? R.color.selected_row : 0);
+        }
 
         return convertView;
     }
 
-    private class ViewHolder {
+    private static class ViewHolder {
 
         TextView titleView;
         TextView descriptionView;
         TextView cityAndDateView;
         ImageView registerView;
+
+        /* what the views currently show, so that rebinding the same row does nothing */
+        final ConferenceRowState state = new ConferenceRowState();
     }
 
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    /*
+     * Ids follow the websafe key, so the list keeps checked rows and its scroll position when
+     * conferences move.
+     */
+    @Override
+    public long getItemId(int position) {
+        String key = getItem(position).getConference().getWebsafeKey();
+        Long id = mIds.get(key);
+        if (null == id) {
+            id = mNextId++;
+            mIds.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Replaces the conferences shown. When some are already shown, the new list is compared to
+     * them by websafe key, on the UI thread for small lists and on the CPU pool of
+     * {@link com.udacity.devrel.training.conference.android.utils.TaskExecutors} otherwise, then
+     * applied with a single refresh. Rows whose conference is unchanged keep their conference
+     * instance, so the refresh does not bind them again.
+     *
+     * @param data
+     */
     public void setData(List<DecoratedConference> data) {
+        if (null != mDiffTask) {
+            mDiffTask.cancel(true);
+            mDiffTask = null;
+        }
+        mPendingAppends.clear();
+        if (null == data || data.isEmpty() || getCount() == 0) {
+            replace(data);
+            return;
+        }
+        List<DecoratedConference> shown = new ArrayList<DecoratedConference>(getCount());
+        for (int i = 0; i < getCount(); i++) {
+            shown.add(getItem(i));
+        }
+        if (shown.size() <= SYNC_DIFF_MAX_SIZE && data.size() <= SYNC_DIFF_MAX_SIZE) {
+            apply(new ConferenceListDiff(shown, data).compute());
+            return;
+        }
+        // the conferences are read here, the UI thread may update them while the task runs
+        mDiffTask = new DiffAsyncTask(new ConferenceListDiff(shown, data));
+        TaskExecutors.executeOnCpu(mDiffTask);
+    }
+
+    private void apply(ConferenceListDiff diff) {
+        // the new instances are adopted even when nothing changed, the refresh finds every row up
+        // to date in its ConferenceRowState and binds nothing
+        List<DecoratedConference> data = diff.apply();
+        data.addAll(mPendingAppends);
+        mPendingAppends.clear();
+        replace(data);
+    }
+
+    private void replace(List<DecoratedConference> data) {
+        setNotifyOnChange(false);
         clear();
+        Set<String> keys = new HashSet<String>();
         if (data != null) {
             for (DecoratedConference item : data) {
                 add(item);
+                keys.add(item.getConference().getWebsafeKey());
             }
         }
+        // conferences no longer shown give up their ids, so ids do not pile up across reloads
+        mIds.keySet().retainAll(keys);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Appends a page of conferences to the end of the list, refreshing the list once.
+     *
+     * @param data
+     */
+    public void appendData(List<DecoratedConference> data) {
+        if (null == data || data.isEmpty()) {
+            return;
+        }
+        if (null != mDiffTask) {
+            // appended to the new list once it is applied
+            mPendingAppends.addAll(data);
+            return;
+        }
+        setNotifyOnChange(false);
+        for (DecoratedConference item : data) {
+            add(item);
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Matches a new list of conferences against the shown one by websafe key.
+     */
+    private class DiffAsyncTask extends AsyncTask<Void, Void, ConferenceListDiff> {
+
+        private final ConferenceListDiff mDiff;
+
+        public DiffAsyncTask(ConferenceListDiff diff) {
+            this.mDiff = diff;
+        }
 
+        @Override
+        protected ConferenceListDiff doInBackground(Void... params) {
+            return mDiff.compute();
+        }
+
+        @Override
+        protected void onPostExecute(ConferenceListDiff diff) {
+            if (mDiffTask != this) {
+                return;
+            }
+            mDiffTask = null;
+            apply(diff);
+        }
     }
-}
\ No newline at end of file
+}
@@ -16,35 +16,106 @@
 
 package com.udacity.devrel.training.conference.android;
 
+import com.udacity.devrel.training.conference.android.utils.CompactConference;
 import com.udacity.devrel.training.conference.android.utils.ConferenceException;
+import com.udacity.devrel.training.conference.android.utils.ConferenceFacets;
+import com.udacity.devrel.training.conference.android.utils.ConferenceLabels;
+import com.udacity.devrel.training.conference.android.utils.ConferencePage;
+import com.udacity.devrel.training.conference.android.utils.ConferenceQuery;
+import com.udacity.devrel.training.conference.android.utils.ConferenceSearchIndex;
+import com.udacity.devrel.training.conference.android.utils.ConferenceStore;
 import com.udacity.devrel.training.conference.android.utils.ConferenceUtils;
+import com.udacity.devrel.training.conference.android.utils.StartupTrace;
+import com.udacity.devrel.training.conference.android.utils.TaskExecutors;
 import com.udacity.devrel.training.conference.android.utils.DecoratedConference;
+import com.udacity.devrel.training.conference.android.utils.RegistrationQueue;
 import com.udacity.devrel.training.conference.android.utils.Utils;
 
 import android.app.AlertDialog;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.app.ListFragment;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.Loader;
+import android.support.v7.app.ActionBarActivity;
+import android.support.v7.view.ActionMode;
+import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseBooleanArray;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.animation.AnimationUtils;
 import android.view.animation.LayoutAnimationController;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.ListView;
+import android.widget.Spinner;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import java.io.IOException;
+import java.text.DateFormatSymbols;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ConferenceListFragment extends ListFragment implements
         LoaderManager.LoaderCallbacks<List<DecoratedConference>> {
 
     private static final String TAG = "ConferenceListFragment";
 
+    /**
+     * The next page is fetched once the user scrolls within this many rows of the end.
+     */
+    private static final int PREFETCH_DISTANCE = 15;
+
+    /**
+     * Reload requests closer together than this are served by the first one.
+     */
+    private static final long RELOAD_DEBOUNCE_MILLIS = 1000;
+
     private ConferenceDataAdapter mAdapter;
+    private ActionMode mActionMode;
+    private ConferencePage mLastPage;
+    private ConferenceQuery mQuery = ConferenceQuery.ALL;
+
+    /* every conference loaded so far, before refinement */
+    private List<DecoratedConference> mAllConferences = new ArrayList<DecoratedConference>();
+    /* how many of them come from the first page, the others from pages appended since */
+    private int mFirstPageCount;
+    private int mAppendedPages;
+    private ConferenceFacets mFacets;
+    private IndexAsyncTask mIndexTask;
+    private final ConferenceFacets.Selection mSelection = new ConferenceFacets.Selection();
+    private ConferenceSearchIndex mSearchIndex = new ConferenceSearchIndex();
+    /* full records indexed while a new search index is built, added to it once it is ready */
+    private final List<CompactConference> mPendingRecords = new ArrayList<CompactConference>();
+    private String mSearchQuery = "";
+    private PageAsyncTask mPageTask;
+    private long mLastReload = -RELOAD_DEBOUNCE_MILLIS;
+
+    /* formats labels again after a locale or time zone change */
+    private final BroadcastReceiver mLabelsReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            ConferenceLabels.invalidate();
+            TaskExecutors.executeOnCpu(new LabelAsyncTask(context, mAllConferences));
+        }
+    };
 
     /*
      * (non-Javadoc)
@@ -61,6 +132,145 @@ public class ConferenceListFragment extends ListFragment implements
         setEmptyText(getString(R.string.no_conferences));
         setListAdapter(mAdapter);
         setListShown(false);
+        if (null != ConferenceUtils.getCurrentAccount()) {
+            // the client is built as soon as the account is known, no need to wait for the
+            // authorization check to start loading, see MainActivity.ClientBuildTask
+            loadConferences();
+        }
+        getListView().setOnItemLongClickListener(new AdapterView.OnItemLongClickListener() {
+            @Override
+            public boolean onItemLongClick(AdapterView<?> parent, View view, int position,
+                    long id) {
+                if (null != mActionMode) {
+                    return false;
+                }
+                getListView().setChoiceMode(ListView.CHOICE_MODE_MULTIPLE);
+                getListView().setItemChecked(position, true);
+                mActionMode = ((ActionBarActivity) getActivity())
+                        .startSupportActionMode(new SelectionActionModeCallback());
+                updateSelection();
+                return true;
+            }
+        });
+        getActivity().registerReceiver(mLabelsReceiver, ConferenceLabels.getIntentFilter());
+        getListView().setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                    int totalItemCount) {
+                // compared with every conference loaded rather than the rows shown, so that a
+                // search or refinement matching a few rows does not page through the whole
+                // catalogue; an empty list still asks for the next page, the first one may have
+                // had no conference left after the conditions checked on the device
+                if (firstVisibleItem + visibleItemCount + PREFETCH_DISTANCE
+                        >= mAllConferences.size()) {
+                    loadNextPage();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onDestroyView() {
+        getActivity().unregisterReceiver(mLabelsReceiver);
+        super.onDestroyView();
+    }
+
+    /**
+     * Formats the labels of conferences in the background, then redraws the list.
+     */
+    class LabelAsyncTask extends AsyncTask<Void, Void, Void> {
+
+        private final Context mContext;
+        private final List<DecoratedConference> mConferences;
+
+        public LabelAsyncTask(Context context, List<DecoratedConference> conferences) {
+            this.mContext = context.getApplicationContext();
+            this.mConferences = new ArrayList<DecoratedConference>(conferences);
+        }
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            ConferenceLabels.prepare(mContext, mConferences);
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result) {
+            if (null != mAdapter) {
+                mAdapter.notifyDataSetChanged();
+            }
+        }
+    }
+
+    /*
+     * Fetches the page after the last one shown, unless one is already on its way or there are
+     * no more pages.
+     */
+    private void loadNextPage() {
+        if (null == mLastPage) {
+            // the list may have come from the store, with the server confirming it unchanged
+            Loader<List<DecoratedConference>> loader = getLoaderManager().getLoader(0);
+            if (null != loader) {
+                mLastPage = ((ConferenceLoader) loader).getLastPage();
+            }
+        }
+        if (null != mPageTask || null == mLastPage || !mLastPage.hasNextPage()) {
+            return;
+        }
+        mPageTask = new PageAsyncTask(getActivity(), mLastPage);
+        TaskExecutors.executeParallel(mPageTask);
+    }
+
+    /**
+     * Fetches the next page of conferences and appends it to the list. Pages left without any
+     * conference by the conditions checked on the device, e.g. available seats, are skipped, so
+     * that paging does not stop while the server has more conferences.
+     */
+    class PageAsyncTask extends AsyncTask<Void, Void, ConferencePage> {
+
+        private final Context mContext;
+        private final ConferencePage mPreviousPage;
+
+        public PageAsyncTask(Context context, ConferencePage previousPage) {
+            this.mContext = context.getApplicationContext();
+            this.mPreviousPage = previousPage;
+        }
+
+        @Override
+        protected ConferencePage doInBackground(Void... params) {
+            try {
+                ConferencePage page = mPreviousPage;
+                do {
+                    page = ConferenceUtils.getNextConferencePage(page);
+                } while ((null == page.getConferences() || page.getConferences().isEmpty())
+                        && page.hasNextPage() && !isCancelled());
+                ConferenceStore.getInstance(mContext, page.getAccount())
+                        .applyPendingRegistrations(page.getConferences());
+                ConferenceLabels.prepare(mContext, page.getConferences());
+                return page;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to get the next page of conferences", e);
+            } catch (ConferenceException e) {
+                // logged
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(ConferencePage page) {
+            mPageTask = null;
+            // a reload may have replaced the list in the meantime
+            if (null == page || mLastPage != mPreviousPage) {
+                return;
+            }
+            mLastPage = page;
+            mAppendedPages++;
+            appendConferences(page.getConferences());
+        }
     }
 
     /*
@@ -72,11 +282,37 @@ public class ConferenceListFragment extends ListFragment implements
     public void onLoadFinished(Loader<List<DecoratedConference>> loader,
             List<DecoratedConference> data) {
         ConferenceLoader conferenceLoader = (ConferenceLoader) loader;
+        traceStartup(conferenceLoader, data);
         if (conferenceLoader.getException() != null) {
-            Utils.displayNetworkErrorMessage(getActivity());
+            // leave the list as it is, with a way to try again
+            setEmptyText(getString(R.string.load_failed));
+            setListShown(true);
+            Utils.displayNetworkErrorMessage(getActivity(), new Runnable() {
+                @Override
+                public void run() {
+                    reload();
+                }
+            });
             return;
         }
-        mAdapter.setData(data);
+        setEmptyText(getString(R.string.no_conferences));
+        if (mAppendedPages > 0 && null != conferenceLoader.getLastPage()) {
+            // the first page was refreshed, e.g. when coming back to the app: the pages after it
+            // stay, and paging goes on from the last one
+            setConferences(mergeFirstPage(data));
+        } else {
+            setConferences(data);
+            mLastPage = conferenceLoader.getLastPage();
+            if (null != mPageTask) {
+                mPageTask.cancel(true);
+                mPageTask = null;
+            }
+        }
+        mFirstPageCount = null == data ? 0 : data.size();
+        if (null == data || data.isEmpty()) {
+            // no scrolling will ask for more, while the next pages may have matches
+            loadNextPage();
+        }
         if (isResumed()) {
             setListShown(true);
         } else {
@@ -84,6 +320,24 @@ public class ConferenceListFragment extends ListFragment implements
         }
     }
 
+    /*
+     * Marks the first list shown during a cold start, and ends the startup trace once the server
+     * has answered.
+     */
+    private void traceStartup(ConferenceLoader loader, List<DecoratedConference> data) {
+        StartupTrace trace = StartupTrace.get();
+        if (null != data && !data.isEmpty()) {
+            trace.mark(StartupTrace.FIRST_LIST);
+        }
+        if (null != loader.getLastPage() || null != loader.getException()) {
+            trace.mark(StartupTrace.FRESH_LIST);
+            String summary = trace.finish();
+            if (null != summary) {
+                Log.i(TAG, "Startup trace:\n" + summary);
+            }
+        }
+    }
+
     /*
      * (non-Javadoc)
      * @see android.support.v4.app.LoaderManager.LoaderCallbacks#onLoaderReset(android
@@ -91,15 +345,286 @@ public class ConferenceListFragment extends ListFragment implements
      */
     @Override
     public void onLoaderReset(Loader<List<DecoratedConference>> arg0) {
-        mAdapter.setData(null);
+        mAppendedPages = 0;
+        mFirstPageCount = 0;
+        setConferences(null);
+    }
+
+    /*
+     * Returns a refreshed first page followed by the conferences of the pages appended after the
+     * previous one, leaving out those the first page now holds.
+     */
+    private List<DecoratedConference> mergeFirstPage(List<DecoratedConference> firstPage) {
+        List<DecoratedConference> merged = null == firstPage ? new ArrayList<DecoratedConference>()
+                : new ArrayList<DecoratedConference>(firstPage);
+        Set<String> keys = new HashSet<String>();
+        for (DecoratedConference decorated : merged) {
+            keys.add(decorated.getConference().getWebsafeKey());
+        }
+        List<DecoratedConference> appended =
+                mAllConferences.subList(mFirstPageCount, mAllConferences.size());
+        for (DecoratedConference decorated : appended) {
+            if (!keys.contains(decorated.getConference().getWebsafeKey())) {
+                merged.add(decorated);
+            }
+        }
+        return merged;
+    }
+
+    /*
+     * Replaces all loaded conferences and re-applies the refinements.
+     */
+    private void setConferences(List<DecoratedConference> conferences) {
+        mAllConferences = null == conferences ? new ArrayList<DecoratedConference>()
+                : new ArrayList<DecoratedConference>(conferences);
+        rebuildIndexes(null);
+        showConferences();
+    }
+
+    /*
+     * Adds a page of conferences to the ones already loaded.
+     */
+    private void appendConferences(List<DecoratedConference> conferences) {
+        if (null == conferences) {
+            return;
+        }
+        mAllConferences.addAll(conferences);
+        rebuildIndexes(conferences);
+        if (mSelection.isEmpty() && TextUtils.isEmpty(mSearchQuery)) {
+            mAdapter.appendData(conferences);
+        }
+        // otherwise the refined list is shown again once the indexes are rebuilt
+    }
+
+    /*
+     * Shows the loaded conferences that match the refinements and the search query. Search
+     * results keep their ranking.
+     */
+    private void showConferences() {
+        List<DecoratedConference> refined;
+        if (mSelection.isEmpty()) {
+            refined = mAllConferences;
+        } else if (null != mFacets) {
+            refined = mFacets.filter(mSelection);
+        } else {
+            // shown once the index is rebuilt
+            return;
+        }
+        if (TextUtils.isEmpty(mSearchQuery)) {
+            mAdapter.setData(refined);
+            return;
+        }
+        List<DecoratedConference> results = mSearchIndex.search(mSearchQuery);
+        if (null != mIndexTask && mIndexTask.mIndex != mSearchIndex) {
+            // the index holds the conferences loaded before, until the new one is built
+            results = loadedInstances(results);
+        }
+        if (refined != mAllConferences) {
+            results.retainAll(new HashSet<DecoratedConference>(refined));
+        }
+        mAdapter.setData(results);
+    }
+
+    /*
+     * Returns the loaded instances of the given conferences, without the ones no longer loaded.
+     */
+    private List<DecoratedConference> loadedInstances(List<DecoratedConference> conferences) {
+        Map<String, DecoratedConference> loaded =
+                new HashMap<String, DecoratedConference>(mAllConferences.size() * 2);
+        for (DecoratedConference decorated : mAllConferences) {
+            loaded.put(decorated.getConference().getWebsafeKey(), decorated);
+        }
+        List<DecoratedConference> instances =
+                new ArrayList<DecoratedConference>(conferences.size());
+        for (DecoratedConference decorated : conferences) {
+            DecoratedConference instance = loaded.get(decorated.getConference().getWebsafeKey());
+            if (null != instance) {
+                instances.add(instance);
+            }
+        }
+        return instances;
+    }
+
+    /**
+     * Narrows the list to the conferences matching <code>query</code>, as the user types it.
+     *
+     * @param query
+     */
+    public void setSearchQuery(String query) {
+        String trimmed = null == query ? "" : query.trim();
+        if (trimmed.equals(mSearchQuery)) {
+            return;
+        }
+        mSearchQuery = trimmed;
+        showConferences();
+    }
+
+    /*
+     * Indexes the loaded conferences off the UI thread. When only a page was added, the search
+     * index is updated with it. Otherwise a new search index is built, and the current one keeps
+     * answering searches until the new one is ready.
+     */
+    private void rebuildIndexes(List<DecoratedConference> added) {
+        if (null != mIndexTask) {
+            mIndexTask.cancel(true);
+            // the cancelled task may not have indexed its conferences
+            added = null;
+        }
+        mFacets = null;
+        ConferenceSearchIndex index = mSearchIndex;
+        if (null == added) {
+            index = new ConferenceSearchIndex();
+            added = mAllConferences;
+        }
+        mIndexTask = new IndexAsyncTask(mAllConferences, added, index);
+        TaskExecutors.executeOnCpu(mIndexTask);
+    }
+
+    /*
+     * Indexes the full record of a loaded conference, so that it is found by its description too.
+     */
+    private void indexRecord(CompactConference record) {
+        mSearchIndex.update(record);
+        if (null != mIndexTask && mIndexTask.mIndex != mSearchIndex) {
+            mPendingRecords.add(record);
+        }
+    }
+
+    class IndexAsyncTask extends AsyncTask<Void, Void, ConferenceFacets> {
+
+        private final List<DecoratedConference> mConferences;
+        private final List<DecoratedConference> mAdded;
+        private final ConferenceSearchIndex mIndex;
+
+        public IndexAsyncTask(List<DecoratedConference> conferences,
+                List<DecoratedConference> added, ConferenceSearchIndex index) {
+            this.mConferences = new ArrayList<DecoratedConference>(conferences);
+            this.mAdded = new ArrayList<DecoratedConference>(added);
+            this.mIndex = index;
+        }
+
+        @Override
+        protected ConferenceFacets doInBackground(Void... params) {
+            mIndex.addAll(mAdded);
+            return new ConferenceFacets(mConferences);
+        }
+
+        @Override
+        protected void onPostExecute(ConferenceFacets facets) {
+            if (mIndexTask != this) {
+                return;
+            }
+            mIndexTask = null;
+            mFacets = facets;
+            if (mIndex != mSearchIndex) {
+                for (CompactConference record : mPendingRecords) {
+                    mIndex.update(record);
+                }
+                mSearchIndex = mIndex;
+            }
+            mPendingRecords.clear();
+            if (!mSelection.isEmpty() || !TextUtils.isEmpty(mSearchQuery)) {
+                showConferences();
+            }
+        }
+    }
+
+    /**
+     * Lets the user narrow the loaded conferences by city, month and topic, with the number of
+     * matching conferences shown next to each value.
+     */
+    public void showRefineDialog() {
+        if (null == mFacets) {
+            Toast.makeText(getActivity(), R.string.refine_not_ready, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final ConferenceFacets.Facet[] facets = ConferenceFacets.Facet.values();
+        String[] labels = new String[]{getString(R.string.filter_city),
+                getString(R.string.refine_month), getString(R.string.filter_topic)};
+        new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.refine)
+                .setItems(labels, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        showFacetDialog(facets[which]);
+                    }
+                })
+                .setNeutralButton(R.string.filter_clear, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int id) {
+                        mSelection.clear();
+                        showConferences();
+                    }
+                })
+                .create()
+                .show();
+    }
+
+    private void showFacetDialog(final ConferenceFacets.Facet facet) {
+        final List<String> values = new ArrayList<String>(mFacets.getValues(facet));
+        Map<String, Integer> counts = mFacets.getCounts(facet, mSelection);
+        String[] monthNames = DateFormatSymbols.getInstance().getMonths();
+        String[] labels = new String[values.size()];
+        final boolean[] checked = new boolean[values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            String label = facet == ConferenceFacets.Facet.MONTH
+                    ? monthNames[Integer.parseInt(value) - 1] : value;
+            labels[i] = getString(R.string.refine_value, label, counts.get(value));
+            checked[i] = mSelection.getValues(facet).contains(value);
+        }
+        new AlertDialog.Builder(getActivity())
+                .setMultiChoiceItems(labels, checked,
+                        new DialogInterface.OnMultiChoiceClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which,
+                                    boolean isChecked) {
+                                checked[which] = isChecked;
+                            }
+                        })
+                .setPositiveButton(R.string.filter_apply, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int id) {
+                        Set<String> chosen = new HashSet<String>();
+                        for (int i = 0; i < checked.length; i++) {
+                            if (checked[i]) {
+                                chosen.add(values.get(i));
+                            }
+                        }
+                        mSelection.setValues(facet, chosen);
+                        showConferences();
+                    }
+                })
+                .setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int id) {
+                        dialog.cancel();
+                    }
+                })
+                .create()
+                .show();
     }
 
     @Override
     public void onListItemClick(ListView l, View v, int position, long id) {
+        if (null != mActionMode) {
+            // the list view has already toggled the item
+            updateSelection();
+            return;
+        }
         final DecoratedConference decoratedConference = mAdapter.getItem(position);
 
-        final String message = Utils
-                .getConferenceCard(getActivity(), decoratedConference.getConference());
+        // the list only holds the list fields, show the full record right away if it is cached
+        CompactConference details = ConferenceUtils.getCachedConference(
+                decoratedConference.getConference().getWebsafeKey());
+        final String message = null != details
+                ? Utils.getConferenceCard(getActivity(),
+                        withListSeats(details, decoratedConference))
+                : Utils.getConferenceCard(getActivity(), decoratedConference);
+        if (null != details) {
+            // the list may have been reloaded since the record was fetched
+            indexRecord(details);
+        }
 
         AlertDialog.Builder alertDialogBuilder = new AlertDialog.Builder(getActivity());
         LayoutInflater li = LayoutInflater.from(getActivity());
@@ -130,46 +655,261 @@ public class ConferenceListFragment extends ListFragment implements
                 })
                 .create()
                 .show();
+
+        if (null == details) {
+            TaskExecutors.executeParallel(
+                    new DetailsAsyncTask(decoratedConference, textViewMessage));
+        }
+    }
+
+    /*
+     * Returns the full record of a conference with the number of seats of the list, which is
+     * refreshed more often and follows the registrations made since.
+     */
+    private static CompactConference withListSeats(CompactConference details,
+            DecoratedConference listed) {
+        return details.withSeatsAvailable(listed.getConference().getSeatsAvailable());
+    }
+
+    /**
+     * Fetches the full record of a conference listed with its list fields only, and shows it in
+     * the details dialog. The record goes to the details cache, so the dialog opens complete the
+     * next time, and to the search index.
+     */
+    class DetailsAsyncTask extends AsyncTask<Void, Void, CompactConference> {
+
+        private final DecoratedConference mDecoratedConference;
+        private final TextView mMessageView;
+
+        public DetailsAsyncTask(DecoratedConference conference, TextView messageView) {
+            this.mDecoratedConference = conference;
+            this.mMessageView = messageView;
+        }
+
+        @Override
+        protected CompactConference doInBackground(Void... params) {
+            try {
+                return ConferenceUtils.fetchConference(
+                        mDecoratedConference.getConference().getWebsafeKey());
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to get the details of a conference", e);
+            } catch (ConferenceException e) {
+                // logged
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(CompactConference conference) {
+            if (null == conference || !isAdded()) {
+                // the dialog keeps showing the list fields
+                return;
+            }
+            mMessageView.setText(Utils.getConferenceCard(getActivity(),
+                    withListSeats(conference, mDecoratedConference)));
+            indexRecord(conference);
+        }
     }
 
     private void registerToConference(DecoratedConference decoratedConference) {
         new RegistrationAsyncTask(decoratedConference).execute();
     }
 
+    /*
+     * Refreshes the selection count shown in the action mode, and leaves the action mode once
+     * nothing is selected.
+     */
+    private void updateSelection() {
+        List<DecoratedConference> selected = getSelectedConferences();
+        if (selected.isEmpty()) {
+            mActionMode.finish();
+            return;
+        }
+        mActionMode.setTitle(getString(R.string.selected_count, selected.size()));
+        mAdapter.notifyDataSetChanged();
+    }
+
+    private List<DecoratedConference> getSelectedConferences() {
+        List<DecoratedConference> selected = new ArrayList<DecoratedConference>();
+        SparseBooleanArray checked = getListView().getCheckedItemPositions();
+        if (null != checked) {
+            for (int i = 0; i < checked.size(); i++) {
+                if (checked.valueAt(i) && checked.keyAt(i) < mAdapter.getCount()) {
+                    selected.add(mAdapter.getItem(checked.keyAt(i)));
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Lets the user register for, or unregister from, all selected conferences at once.
+     */
+    private class SelectionActionModeCallback implements ActionMode.Callback {
+
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.conference_selection, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            switch (item.getItemId()) {
+                case R.id.action_register_selected:
+                    new BatchRegistrationAsyncTask(getSelectedConferences(), true).execute();
+                    mode.finish();
+                    return true;
+                case R.id.action_unregister_selected:
+                    new BatchRegistrationAsyncTask(getSelectedConferences(), false).execute();
+                    mode.finish();
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            mActionMode = null;
+            getListView().clearChoices();
+            getListView().setChoiceMode(ListView.CHOICE_MODE_NONE);
+            mAdapter.notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Registers for, or unregisters from, several conferences with a single batched request. The
+     * changes are shown right away and queued, see
+     * {@link com.udacity.devrel.training.conference.android.utils.RegistrationQueue}. They are
+     * rolled back for the conferences the server refused, and stay queued if the server cannot be
+     * reached.
+     */
+    class BatchRegistrationAsyncTask extends AsyncTask<Void, Void, Map<String, Boolean>> {
+
+        private final List<DecoratedConference> mDecoratedConferences =
+                new ArrayList<DecoratedConference>();
+        private final List<CompactConference> mOriginalConferences =
+                new ArrayList<CompactConference>();
+        private final boolean mRegister;
+        private final Context mContext;
+        private final String mAccount;
+        private Exception mException;
+
+        public BatchRegistrationAsyncTask(List<DecoratedConference> conferences,
+                boolean register) {
+            this.mContext = getActivity().getApplicationContext();
+            this.mAccount = ConferenceUtils.getCurrentAccount();
+            this.mRegister = register;
+            for (DecoratedConference conference : conferences) {
+                // only conferences whose status actually changes
+                if (conference.isRegistered() != register) {
+                    mDecoratedConferences.add(conference);
+                    mOriginalConferences.add(conference.getConference());
+                }
+            }
+        }
+
+        @Override
+        protected void onPreExecute() {
+            for (DecoratedConference conference : mDecoratedConferences) {
+                conference.applyRegistration(mRegister);
+            }
+            mAdapter.notifyDataSetChanged();
+        }
+
+        @Override
+        protected Map<String, Boolean> doInBackground(Void... params) {
+            for (DecoratedConference conference : mDecoratedConferences) {
+                RegistrationQueue.enqueue(mContext, mAccount, conference, !mRegister);
+            }
+            try {
+                try {
+                    return RegistrationQueue.flush(mContext, mAccount);
+                } catch (IOException e) {
+                    mException = e;
+                }
+            } catch (ConferenceException e) {
+                //logged
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Map<String, Boolean> results) {
+            int failures = 0;
+            int queued = 0;
+            for (int i = 0; i < mDecoratedConferences.size(); i++) {
+                DecoratedConference conference = mDecoratedConferences.get(i);
+                CompactConference original = mOriginalConferences.get(i);
+                Boolean result = null == results ? null : results.get(original.getWebsafeKey());
+                if (null == result) {
+                    queued++;
+                } else if (!result) {
+                    conference.setRegistered(!mRegister);
+                    conference.setConference(original);
+                    failures++;
+                }
+            }
+            if (queued > 0) {
+                Log.w(TAG, queued + " registration updates queued until back online",
+                        mException);
+            }
+            if (failures > 0) {
+                Log.e(TAG, "Server refused " + failures + " registration updates");
+                mAdapter.notifyDataSetChanged();
+            }
+            if ((failures == 0 && queued == 0) || !isAdded()) {
+                return;
+            }
+            Toast.makeText(getActivity(), failures > 0
+                    ? getString(R.string.registrations_failed, failures)
+                    : getString(R.string.registrations_queued, queued), Toast.LENGTH_SHORT)
+                    .show();
+        }
+    }
+
+    /**
+     * Flips the registration status of a conference right away, queues the change and sends it
+     * to the server, see
+     * {@link com.udacity.devrel.training.conference.android.utils.RegistrationQueue}. The local
+     * change is rolled back if the server refuses it, and stays queued if the server cannot be
+     * reached.
+     */
     class RegistrationAsyncTask extends AsyncTask<Void, Void, Boolean> {
 
         private final DecoratedConference mDecoratedConference;
-        private List<DecoratedConference> mDecoratedConferences;
+        private final boolean mRegister;
+        private final CompactConference mOriginalConference;
+        private final Context mContext;
+        private final String mAccount;
         private Exception mException;
 
         public RegistrationAsyncTask(DecoratedConference conference) {
+            this.mContext = getActivity().getApplicationContext();
+            this.mAccount = ConferenceUtils.getCurrentAccount();
             this.mDecoratedConference = conference;
+            this.mRegister = !conference.isRegistered();
+            this.mOriginalConference = conference.getConference();
         }
 
         @Override
         protected void onPreExecute() {
-            setListShown(false);
+            mDecoratedConference.applyRegistration(mRegister);
+            mAdapter.notifyDataSetChanged();
         }
 
         @Override
         protected Boolean doInBackground(Void... params) {
+            RegistrationQueue.enqueue(mContext, mAccount, mDecoratedConference, !mRegister);
             try {
                 try {
-                    if (mDecoratedConference.isRegistered()) {
-                        boolean success = ConferenceUtils
-                                .unregisterFromConference(mDecoratedConference.getConference());
-                        if (success) {
-                            mDecoratedConferences = ConferenceUtils.getConferences();
-                        }
-                        return success;
-                    } else {
-                        boolean success = ConferenceUtils.registerForConference(
-                                mDecoratedConference.getConference());
-                        if (success) {
-                            mDecoratedConferences = ConferenceUtils.getConferences();
-                        }
-                        return success;
-                    }
+                    return RegistrationQueue.flush(mContext, mAccount)
+                            .get(mOriginalConference.getWebsafeKey());
                 } catch (IOException e) {
                     mException = e;
                 }
@@ -182,15 +922,28 @@ public class ConferenceListFragment extends ListFragment implements
         @Override
         protected void onPostExecute(Boolean result) {
             if (null != result && result.booleanValue()) {
-                // success
-                reload(mDecoratedConferences);
-            } else {
-                // failure
-                Log.e(TAG, "Failed to perform registration update", mException);
-                if (mException != null) {
-                    Utils.displayNetworkErrorMessage(getActivity());
+                // success, the optimistic update already reflects the server state
+                return;
+            }
+            if (null == result) {
+                // the change stays queued and is sent when back online
+                Log.w(TAG, "Registration update queued until back online", mException);
+                if (isAdded()) {
+                    Toast.makeText(getActivity(), R.string.registration_queued,
+                            Toast.LENGTH_SHORT).show();
                 }
+                return;
+            }
+            // refused by the server
+            Log.e(TAG, "Server refused the registration update");
+            mDecoratedConference.setRegistered(!mRegister);
+            mDecoratedConference.setConference(mOriginalConference);
+            mAdapter.notifyDataSetChanged();
+            if (!isAdded()) {
+                return;
             }
+            Toast.makeText(getActivity(), R.string.registration_failed, Toast.LENGTH_SHORT)
+                    .show();
         }
     }
 
@@ -201,7 +954,7 @@ public class ConferenceListFragment extends ListFragment implements
      */
     @Override
     public Loader<List<DecoratedConference>> onCreateLoader(int arg0, Bundle arg1) {
-        return new ConferenceLoader(getActivity());
+        return new ConferenceLoader(getActivity(), mQuery);
     }
 
     public static ConferenceListFragment newInstance() {
@@ -211,19 +964,149 @@ public class ConferenceListFragment extends ListFragment implements
         return f;
     }
 
+    /**
+     * Starts loading the conferences of the current account, unless they are already loading.
+     * Does nothing until the list is set up, which then starts loading if an account is current.
+     */
     public void loadConferences() {
+        if (null == mAdapter) {
+            return;
+        }
         getLoaderManager().initLoader(0, null, this);
     }
 
+    /**
+     * Reloads the conferences from the server. Repeated requests in quick succession, e.g.
+     * several taps on the reload action, start a single reload.
+     */
     public void reload() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - mLastReload < RELOAD_DEBOUNCE_MILLIS) {
+            Log.d(TAG, "Ignoring reload, one was just started");
+            return;
+        }
+        mLastReload = now;
+        // an explicit reload starts paging over
+        mLastPage = null;
+        mAppendedPages = 0;
+        restartLoader();
+    }
+
+    private void restartLoader() {
         setListShown(false);
         getLoaderManager().restartLoader(0, null, this).startLoading();
     }
 
-    public void reload(List<DecoratedConference> conferences) {
-        mAdapter.setData(conferences);
-        mAdapter.notifyDataSetChanged();
-        setListShown(true);
+    /**
+     * Shows a dialog to filter conferences by city, topic, month, attendees and available seats.
+     * The filters are applied by the server, so only matching conferences are downloaded.
+     */
+    public void showFilterDialog() {
+        View filterView = LayoutInflater.from(getActivity())
+                .inflate(R.layout.conference_filter, null);
+        final EditText cityView = (EditText) filterView.findViewById(R.id.editTextCity);
+        final EditText topicView = (EditText) filterView.findViewById(R.id.editTextTopic);
+        final Spinner monthView = (Spinner) filterView.findViewById(R.id.spinnerMonth);
+        final EditText minAttendeesView = (EditText) filterView
+                .findViewById(R.id.editTextMinAttendees);
+        final CheckBox seatsAvailableView = (CheckBox) filterView
+                .findViewById(R.id.checkBoxSeatsAvailable);
+
+        List<String> months = new ArrayList<String>();
+        months.add(getString(R.string.filter_any_month));
+        months.addAll(Arrays.asList(DateFormatSymbols.getInstance().getMonths()).subList(0, 12));
+        ArrayAdapter<String> monthAdapter = new ArrayAdapter<String>(getActivity(),
+                android.R.layout.simple_spinner_item, months);
+        monthAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        monthView.setAdapter(monthAdapter);
+
+        cityView.setText(mQuery.getCity());
+        topicView.setText(mQuery.getTopic());
+        monthView.setSelection(CompactConference.UNKNOWN == mQuery.getMonth()
+                ? 0 : mQuery.getMonth());
+        if (ConferenceQuery.Operator.GTEQ == mQuery.getMaxAttendeesOperator()) {
+            minAttendeesView.setText(String.valueOf(mQuery.getMaxAttendees()));
+        }
+        seatsAvailableView.setChecked(mQuery.isSeatsAvailable());
+
+        new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.filter)
+                .setView(filterView)
+                .setPositiveButton(R.string.filter_apply, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int id) {
+                        ConferenceQuery.Builder builder = new ConferenceQuery.Builder();
+                        try {
+                            if (!TextUtils.isEmpty(cityView.getText().toString().trim())) {
+                                builder.city(cityView.getText().toString());
+                            }
+                            if (!TextUtils.isEmpty(topicView.getText().toString().trim())) {
+                                builder.topic(topicView.getText().toString());
+                            }
+                            if (monthView.getSelectedItemPosition() > 0) {
+                                builder.month(monthView.getSelectedItemPosition());
+                            }
+                            if (!TextUtils.isEmpty(minAttendeesView.getText())) {
+                                builder.maxAttendees(ConferenceQuery.Operator.GTEQ,
+                                        Integer.parseInt(minAttendeesView.getText().toString()));
+                            }
+                            if (seatsAvailableView.isChecked()) {
+                                builder.seatsAvailable();
+                            }
+                        } catch (IllegalArgumentException e) {
+                            // also covers NumberFormatException
+                            Toast.makeText(getActivity(), e.getMessage(), Toast.LENGTH_SHORT)
+                                    .show();
+                            return;
+                        }
+                        setQuery(builder.build());
+                    }
+                })
+                .setNeutralButton(R.string.filter_clear, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int id) {
+                        setQuery(ConferenceQuery.ALL);
+                    }
+                })
+                .setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int id) {
+                        dialog.cancel();
+                    }
+                })
+                .create()
+                .show();
     }
 
-}
\ No newline at end of file
+    /**
+     * Drops the conferences of the previous account and loads those of the current one.
+     */
+    public void onAccountChanged() {
+        if (null != mActionMode) {
+            mActionMode.finish();
+        }
+        if (null != mPageTask) {
+            mPageTask.cancel(true);
+            mPageTask = null;
+        }
+        mLastPage = null;
+        mAppendedPages = 0;
+        setConferences(null);
+        restartLoader();
+    }
+
+    /**
+     * Replaces the current query and reloads the list if it changed.
+     *
+     * @param query
+     */
+    public void setQuery(ConferenceQuery query) {
+        if (mQuery.equals(query)) {
+            return;
+        }
+        mQuery = query;
+        mLastPage = null;
+        mAppendedPages = 0;
+        restartLoader();
+    }
+}
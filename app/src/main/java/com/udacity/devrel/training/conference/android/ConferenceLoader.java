@@ -17,43 +17,165 @@
 package com.udacity.devrel.training.conference.android;
 
 import com.udacity.devrel.training.conference.android.utils.ConferenceException;
+import com.udacity.devrel.training.conference.android.utils.ConferenceLabels;
+import com.udacity.devrel.training.conference.android.utils.ConferencePage;
+import com.udacity.devrel.training.conference.android.utils.ConferenceQuery;
+import com.udacity.devrel.training.conference.android.utils.ConferenceStore;
+import com.udacity.devrel.training.conference.android.utils.StartupTrace;
 import com.udacity.devrel.training.conference.android.utils.ConferenceUtils;
 import com.udacity.devrel.training.conference.android.utils.DecoratedConference;
-import com.udacity.devrel.training.conference.android.utils.Utils;
 
 import android.content.Context;
 import android.support.v4.content.AsyncTaskLoader;
 import android.util.Log;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Loads the first page of conferences. The last known list is read from the
+ * {@link com.udacity.devrel.training.conference.android.utils.ConferenceStore} and delivered
+ * first, then the list is refreshed from the server in the background and delivered again only
+ * if something changed, including when it became empty. A failed refresh keeps the list already
+ * delivered; with nothing delivered yet, <code>null</code> is delivered and
+ * {@link #getException()} tells why. Only the fields of
+ * {@link com.udacity.devrel.training.conference.android.utils.ConferenceUtils#LIST_FIELDS} are
+ * loaded.
+ */
 public class ConferenceLoader extends AsyncTaskLoader<List<DecoratedConference>> {
 
     private static final String TAG = "ConferenceLoader";
+
+    /**
+     * Number of conferences fetched with the first page, later pages are fetched on demand.
+     */
+    public static final int PAGE_SIZE = 50;
+
+    private final ConferenceQuery mQuery;
+
+    /* the account conferences are loaded for, fixed when the loader is created */
+    private final String mAccount;
     private Exception mException;
+    private List<DecoratedConference> mConferences;
+
+    /* set once the store has been consulted for this loader */
+    private volatile boolean mStoreChecked;
+
+    /* the list last read from the store, until it has been revalidated */
+    private volatile List<DecoratedConference> mStoredConferences;
+
+    /* the last page fetched from the server */
+    private volatile ConferencePage mLastPage;
 
     public ConferenceLoader(Context context) {
+        this(context, ConferenceQuery.ALL);
+    }
+
+    /**
+     * Creates a loader for the conferences matching <code>query</code>, for the current account.
+     * Only the unfiltered list is kept in the store.
+     *
+     * @param context
+     * @param query
+     */
+    public ConferenceLoader(Context context, ConferenceQuery query) {
         super(context);
+        mQuery = query;
+        mAccount = ConferenceUtils.getCurrentAccount();
     }
 
     @Override
     public List<DecoratedConference> loadInBackground() {
+        ConferenceStore store = null != mAccount
+                ? ConferenceStore.getInstance(getContext(), mAccount) : null;
+        // only the unfiltered list is stored
+        boolean storable = null != store && mQuery.isEmpty();
+        if (storable && !mStoreChecked) {
+            mStoreChecked = true;
+            StartupTrace.get().begin(StartupTrace.STORE);
+            List<DecoratedConference> stored = store.load();
+            StartupTrace.get().end(StartupTrace.STORE);
+            if (null != stored && !stored.isEmpty()) {
+                ConferenceLabels.prepare(getContext(), stored);
+                mStoredConferences = stored;
+                return stored;
+            }
+        }
         try {
-            ConferenceUtils.getProfile();
-            return ConferenceUtils.getConferences();
+            mException = null;
+            StartupTrace.get().begin(StartupTrace.FIRST_PAGE);
+            ConferencePage page = ConferenceUtils.getFirstConferencePage(mAccount, mQuery,
+                    PAGE_SIZE, ConferenceUtils.LIST_FIELDS);
+            StartupTrace.get().end(StartupTrace.FIRST_PAGE);
+            if (null != store) {
+                // the server does not know about the changes made offline yet
+                store.applyPendingRegistrations(page.getConferences());
+            }
+            // an empty page is a list to show, unlike null which stands for a failure
+            List<DecoratedConference> conferences = null == page.getConferences()
+                    ? new ArrayList<DecoratedConference>() : page.getConferences();
+            ConferenceLabels.prepare(getContext(), conferences);
+            mLastPage = page;
+            if (storable) {
+                store.save(conferences);
+            }
+            return conferences;
         } catch (IOException e) {
-            Log.e(TAG, "Failed to get conferences", e);
-            mException = e;
+            onFailure(e);
         } catch (ConferenceException e) {
-            // logged
+            onFailure(e);
         }
         return null;
     }
 
+    /*
+     * Records why the list could not be loaded, unless a list is already shown and stays.
+     */
+    private void onFailure(Exception e) {
+        if (null == mStoredConferences && null == mConferences) {
+            Log.e(TAG, "Failed to get conferences", e);
+            mException = e;
+        } else {
+            Log.w(TAG, "Failed to refresh conferences, keeping the ones shown", e);
+        }
+    }
+
+    @Override
+    public void deliverResult(List<DecoratedConference> data) {
+        if (isReset()) {
+            return;
+        }
+        boolean fromStore = null != data && data == mStoredConferences;
+        if (null == data && null != mConferences) {
+            // the refresh failed, the list delivered before stays
+            mStoredConferences = null;
+            return;
+        }
+        if (!fromStore && null != data && null != mConferences
+                && DecoratedConference.haveSameContent(mConferences, data)) {
+            // nothing new since the last delivery
+            Log.d(TAG, "Refreshed conferences are unchanged");
+            mStoredConferences = null;
+            return;
+        }
+        mConferences = data;
+        if (isStarted()) {
+            super.deliverResult(data);
+        }
+        if (fromStore) {
+            // revalidate against the server
+            mStoredConferences = null;
+            forceLoad();
+        }
+    }
+
     @Override
     protected void onStartLoading() {
         super.onStartLoading();
+        if (null != mConferences) {
+            super.deliverResult(mConferences);
+        }
         forceLoad();
     }
 
@@ -63,9 +185,24 @@ public class ConferenceLoader extends AsyncTaskLoader<List<DecoratedConference>>
     @Override
     protected void onStopLoading() {
         cancelLoad();
-        if (mException != null) {
-            Utils.displayNetworkErrorMessage(getContext());
-        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        cancelLoad();
+        mConferences = null;
+        mStoredConferences = null;
+    }
+
+    /**
+     * Returns the first page last fetched from the server, or <code>null</code> if only stored
+     * conferences have been loaded so far. Use it to fetch the following pages.
+     *
+     * @return
+     */
+    public ConferencePage getLastPage() {
+        return mLastPage;
     }
 
     public Exception getException() {
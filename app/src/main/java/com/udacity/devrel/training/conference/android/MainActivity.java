@@ -20,6 +20,8 @@ import com.google.android.gms.auth.GoogleAuthUtil;
 import com.google.android.gms.common.AccountPicker;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
 import com.udacity.devrel.training.conference.android.utils.ConferenceUtils;
+import com.udacity.devrel.training.conference.android.utils.StartupTrace;
+import com.udacity.devrel.training.conference.android.utils.TaskExecutors;
 import com.udacity.devrel.training.conference.android.utils.Utils;
 
 import android.accounts.Account;
@@ -29,7 +31,9 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.ActionBarActivity;
+import android.support.v7.widget.SearchView;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
@@ -53,13 +57,20 @@ public class MainActivity extends ActionBarActivity {
     private static final int ACTIVITY_RESULT_FROM_ACCOUNT_SELECTION = 2222;
 
     private AuthorizationCheckTask mAuthTask;
+    private ClientBuildTask mBuildTask;
     private String mEmailAccount;
 
+    /* the account the conference list was loaded for */
+    private String mLoadedAccount;
+
     private ConferenceListFragment mConferenceListFragment;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        if (savedInstanceState == null) {
+            StartupTrace.get().start();
+        }
         setContentView(R.layout.activity_main);
         mEmailAccount = Utils.getEmailAccount(this);
 
@@ -68,6 +79,18 @@ public class MainActivity extends ActionBarActivity {
             getSupportFragmentManager().beginTransaction()
                     .add(R.id.container, mConferenceListFragment)
                     .commit();
+        } else {
+            mConferenceListFragment = (ConferenceListFragment) getSupportFragmentManager()
+                    .findFragmentById(R.id.container);
+        }
+
+        if (null != mEmailAccount) {
+            // The account is known from a previous run: build its client right away, so that
+            // the list starts loading while the authorization is being checked. Building it
+            // touches the disk, so it runs in parallel with, not behind, the other tasks.
+            mBuildTask = new ClientBuildTask(mEmailAccount);
+            TaskExecutors.executeParallel(mBuildTask);
+            mLoadedAccount = mEmailAccount;
         }
 
     }
@@ -79,6 +102,22 @@ public class MainActivity extends ActionBarActivity {
             mAuthTask.cancel(true);
             mAuthTask = null;
         }
+        if (mBuildTask != null) {
+            mBuildTask.cancel(false);
+            mBuildTask = null;
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ConferenceUtils.getDetailsCache().onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        ConferenceUtils.getDetailsCache().onLowMemory();
     }
 
     protected void onResume() {
@@ -96,6 +135,21 @@ public class MainActivity extends ActionBarActivity {
 
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.main, menu);
+        SearchView searchView = (SearchView) MenuItemCompat
+                .getActionView(menu.findItem(R.id.action_search));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mConferenceListFragment.setSearchQuery(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String query) {
+                mConferenceListFragment.setSearchQuery(query);
+                return true;
+            }
+        });
         return true;
     }
 
@@ -108,9 +162,11 @@ public class MainActivity extends ActionBarActivity {
                         .setPositiveButton(R.string.ok, new DialogInterface.OnClickListener() {
                             @Override
                             public void onClick(DialogInterface dialog, int id) {
+                                ConferenceUtils.clearAccount(mEmailAccount);
                                 Utils.saveEmailAccount(MainActivity.this, null);
+                                mEmailAccount = null;
                                 dialog.cancel();
-                                finish();
+                                selectAccount();
                             }
                         })
                         .setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
@@ -126,6 +182,12 @@ public class MainActivity extends ActionBarActivity {
             case R.id.action_reload:
                 mConferenceListFragment.reload();
                 break;
+            case R.id.action_filter:
+                mConferenceListFragment.showFilterDialog();
+                break;
+            case R.id.action_refine:
+                mConferenceListFragment.showRefineDialog();
+                break;
         }
         return true;
     }
@@ -201,7 +263,10 @@ public class MainActivity extends ActionBarActivity {
         protected Boolean doInBackground(String... emailAccounts) {
             Log.i(LOG_TAG, "Background task started.");
 
-            if (!Utils.checkGooglePlayServicesAvailable(MainActivity.this)) {
+            StartupTrace.get().begin(StartupTrace.PLAY_SERVICES);
+            boolean available = Utils.checkGooglePlayServicesAvailable(MainActivity.this);
+            StartupTrace.get().end(StartupTrace.PLAY_SERVICES);
+            if (!available) {
                 publishProgress(R.string.gms_not_available);
                 return FAILURE;
             }
@@ -219,6 +284,16 @@ public class MainActivity extends ActionBarActivity {
             mEmailAccount = emailAccount;
             Utils.saveEmailAccount(MainActivity.this, emailAccount);
 
+            // Get the token now, so that the first requests do not wait for it.
+            StartupTrace.get().begin(StartupTrace.TOKEN);
+            try {
+                ConferenceUtils.warmToken(MainActivity.this, emailAccount);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Failed to warm the token, requests will fetch it", e);
+            }
+            StartupTrace.get().end(StartupTrace.TOKEN);
+
+            ConferenceUtils.build(MainActivity.this, emailAccount);
             return SUCCESS;
         }
 
@@ -237,14 +312,28 @@ public class MainActivity extends ActionBarActivity {
         @Override
         protected void onPostExecute(Boolean success) {
             if (success) {
-                // Authorization check successful, get conferences.
-                ConferenceUtils.build(MainActivity.this, mEmailAccount);
-                getConferencesForList();
+                // Authorization check successful and client built, get conferences.
+                if (null == mLoadedAccount) {
+                    getConferencesForList();
+                } else if (!mLoadedAccount.equals(mEmailAccount)) {
+                    mConferenceListFragment.onAccountChanged();
+                }
+                mLoadedAccount = mEmailAccount;
+                // sends registration changes queued while offline in an earlier session
+                startService(new Intent(MainActivity.this, RegistrationReplayService.class));
+                // keeps the stored list fresh for the next start
+                SyncService.schedule(MainActivity.this);
             } else {
                 // Authorization check unsuccessful.
+                final String emailAccount = mEmailAccount;
                 mEmailAccount = null;
-                if (mException != null) {
-                    Utils.displayNetworkErrorMessage(MainActivity.this);
+                if (mException != null && null != emailAccount) {
+                    Utils.displayNetworkErrorMessage(MainActivity.this, new Runnable() {
+                        @Override
+                        public void run() {
+                            performAuthCheck(emailAccount);
+                        }
+                    });
                 }
             }
             mAuthTask = null;
@@ -256,6 +345,34 @@ public class MainActivity extends ActionBarActivity {
         }
     }
 
+    /**
+     * Builds the client of the account known from a previous run, then starts loading the list.
+     */
+    private class ClientBuildTask extends AsyncTask<Void, Void, Void> {
+
+        private final String mAccount;
+
+        public ClientBuildTask(String account) {
+            this.mAccount = account;
+        }
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            StartupTrace.get().begin(StartupTrace.CLIENT);
+            ConferenceUtils.build(MainActivity.this, mAccount);
+            StartupTrace.get().end(StartupTrace.CLIENT);
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result) {
+            mBuildTask = null;
+            if (null != mConferenceListFragment) {
+                mConferenceListFragment.loadConferences();
+            }
+        }
+    }
+
     private void getConferencesForList() {
         if (TextUtils.isEmpty(mEmailAccount)) {
             return;
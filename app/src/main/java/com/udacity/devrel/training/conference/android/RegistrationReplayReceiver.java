@@ -0,0 +1,53 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android;
+
+import com.udacity.devrel.training.conference.android.utils.Utils;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+
+/**
+ * Sends the queued registration changes when connectivity returns. The receiver is disabled in
+ * the manifest and only enabled while changes are queued, so the application is not woken up by
+ * every connectivity change.
+ */
+public class RegistrationReplayReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Utils.isConnected(context)) {
+            context.startService(new Intent(context, RegistrationReplayService.class));
+        }
+    }
+
+    /**
+     * Enables or disables the receiver.
+     *
+     * @param context
+     * @param enabled
+     */
+    public static void setEnabled(Context context, boolean enabled) {
+        context.getPackageManager().setComponentEnabledSetting(
+                new ComponentName(context, RegistrationReplayReceiver.class),
+                enabled ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED
+                        : PackageManager.COMPONENT_ENABLED_STATE_DISABLED,
+                PackageManager.DONT_KILL_APP);
+    }
+}
@@ -0,0 +1,64 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android;
+
+import com.udacity.devrel.training.conference.android.utils.ConferenceException;
+import com.udacity.devrel.training.conference.android.utils.ConferenceUtils;
+import com.udacity.devrel.training.conference.android.utils.RegistrationQueue;
+import com.udacity.devrel.training.conference.android.utils.Utils;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Sends the queued registration changes of the saved account in the background, see
+ * {@link com.udacity.devrel.training.conference.android.utils.RegistrationQueue}.
+ */
+public class RegistrationReplayService extends IntentService {
+
+    private static final String LOG_TAG = "RegistrationReplay";
+
+    public RegistrationReplayService() {
+        super(LOG_TAG);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        String account = Utils.getEmailAccount(this);
+        if (null == account) {
+            // no account to send the changes for, until the user selects one again
+            RegistrationReplayReceiver.setEnabled(this, false);
+            return;
+        }
+        if (!Utils.isConnected(this)) {
+            return;
+        }
+        ConferenceUtils.buildForAccount(this, account);
+        try {
+            Map<String, Boolean> results = RegistrationQueue.flush(this, account);
+            Log.d(LOG_TAG, "Sent " + results.size() + " queued registration changes");
+        } catch (IOException e) {
+            // tried again on the next connectivity change
+            Log.w(LOG_TAG, "Failed to send the queued registration changes", e);
+        } catch (ConferenceException e) {
+            // logged
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android;
+
+import com.google.api.client.http.HttpStatusCodes;
+import com.udacity.devrel.training.conference.android.utils.ConferenceException;
+import com.udacity.devrel.training.conference.android.utils.ConferencePage;
+import com.udacity.devrel.training.conference.android.utils.ConferenceQuery;
+import com.udacity.devrel.training.conference.android.utils.ConferenceStore;
+import com.udacity.devrel.training.conference.android.utils.ConferenceUtils;
+import com.udacity.devrel.training.conference.android.utils.MetricsSink;
+import com.udacity.devrel.training.conference.android.utils.RegistrationQueue;
+import com.udacity.devrel.training.conference.android.utils.SyncScheduler;
+import com.udacity.devrel.training.conference.android.utils.Utils;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.TrafficStats;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Refreshes the stored list of conferences of the saved account in the background, along with
+ * the registration status read from the user's profile, so that the application opens onto
+ * fresh data. Queued registration changes are sent first. When to sync is decided by a
+ * {@link com.udacity.devrel.training.conference.android.utils.SyncScheduler}, whose state is
+ * kept in preferences. The service runs from a non-waking alarm, so it never wakes the device
+ * up, and schedules its next run itself.
+ */
+public class SyncService extends IntentService {
+
+    private static final String LOG_TAG = "SyncService";
+
+    /* name of the sync in the metrics of Endpoints calls */
+    private static final String METRICS_CALL = "SYNC conferences";
+
+    private static final String PREFS_NAME = "sync";
+    private static final String PREFS_KEY_LAST_SUCCESS = "last_success";
+    private static final String PREFS_KEY_LAST_ATTEMPT = "last_attempt";
+    private static final String PREFS_KEY_FAILURE_COUNT = "failure_count";
+    private static final String PREFS_KEY_LAST_DURATION = "last_duration";
+    private static final String PREFS_KEY_LAST_BYTES = "last_bytes";
+
+    public SyncService() {
+        super(LOG_TAG);
+    }
+
+    /**
+     * Schedules the next sync from the saved state, replacing any sync scheduled before. Call it
+     * whenever the application starts, alarms do not survive a reboot.
+     *
+     * @param context
+     */
+    public static void schedule(Context context) {
+        SyncScheduler scheduler = loadScheduler(context);
+        scheduleAt(context, Math.max(scheduler.getNextRunTime(), System.currentTimeMillis()));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        String account = Utils.getEmailAccount(this);
+        if (null == account) {
+            // scheduled again once the user selects an account
+            return;
+        }
+        SyncScheduler scheduler = loadScheduler(this);
+        boolean unmetered = Utils.isUnmeteredConnected(this);
+        boolean charging = Utils.isCharging(this);
+        if (scheduler.shouldRun(unmetered, charging)) {
+            sync(account, scheduler);
+        } else {
+            Log.d(LOG_TAG, "Not syncing: unmetered=" + unmetered + " charging=" + charging
+                    + " " + scheduler);
+        }
+        scheduleAt(this, scheduler.getNextCheckTime(unmetered, charging));
+    }
+
+    private void sync(String account, SyncScheduler scheduler) {
+        long start = SystemClock.elapsedRealtime();
+        long rxStart = TrafficStats.getUidRxBytes(Process.myUid());
+        long txStart = TrafficStats.getUidTxBytes(Process.myUid());
+        boolean success = false;
+        try {
+            ConferenceUtils.buildForAccount(this, account);
+            // the list is fetched after the changes are sent, so that it reflects them
+            try {
+                RegistrationQueue.flush(this, account);
+            } catch (IOException e) {
+                // the changes stay queued and are overlaid on the stored list, the sync goes on
+                Log.w(LOG_TAG, "Sending queued registration changes failed", e);
+            }
+            ConferencePage page = ConferenceUtils.getFirstConferencePage(account,
+                    ConferenceQuery.ALL, ConferenceLoader.PAGE_SIZE, ConferenceUtils.LIST_FIELDS);
+            ConferenceStore store = ConferenceStore.getInstance(this, account);
+            store.applyPendingRegistrations(page.getConferences());
+            store.save(page.getConferences());
+            success = true;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Sync failed", e);
+        } catch (ConferenceException e) {
+            // logged
+        }
+        if (success) {
+            scheduler.onSuccess();
+        } else {
+            scheduler.onFailure();
+        }
+        long duration = SystemClock.elapsedRealtime() - start;
+        long rxBytes = getBytesSince(rxStart, TrafficStats.getUidRxBytes(Process.myUid()));
+        long txBytes = getBytesSince(txStart, TrafficStats.getUidTxBytes(Process.myUid()));
+        MetricsSink sink = ConferenceUtils.getMetricsSink();
+        if (null != sink) {
+            sink.record(METRICS_CALL, duration, success ? HttpStatusCodes.STATUS_CODE_OK
+                    : MetricsSink.NO_STATUS, 0, txBytes, rxBytes);
+        }
+        Log.d(LOG_TAG, "Sync " + (success ? "succeeded" : "failed") + " in " + duration
+                + "ms, sent " + txBytes + " bytes, received " + rxBytes + " bytes");
+        getPreferences(this).edit()
+                .putLong(PREFS_KEY_LAST_SUCCESS, scheduler.getLastSuccess())
+                .putLong(PREFS_KEY_LAST_ATTEMPT, scheduler.getLastAttempt())
+                .putInt(PREFS_KEY_FAILURE_COUNT, scheduler.getFailureCount())
+                .putLong(PREFS_KEY_LAST_DURATION, duration)
+                .putLong(PREFS_KEY_LAST_BYTES, MetricsSink.UNKNOWN_SIZE == rxBytes
+                        || MetricsSink.UNKNOWN_SIZE == txBytes
+                        ? MetricsSink.UNKNOWN_SIZE : rxBytes + txBytes)
+                .apply();
+    }
+
+    /*
+     * Returns the bytes counted by TrafficStats between two readings, or UNKNOWN_SIZE if the
+     * device does not count them.
+     */
+    private static long getBytesSince(long before, long after) {
+        if (TrafficStats.UNSUPPORTED == before || TrafficStats.UNSUPPORTED == after) {
+            return MetricsSink.UNKNOWN_SIZE;
+        }
+        return after - before;
+    }
+
+    private static SyncScheduler loadScheduler(Context context) {
+        SharedPreferences prefs = getPreferences(context);
+        SyncScheduler scheduler = new SyncScheduler.Builder().build();
+        scheduler.restore(prefs.getLong(PREFS_KEY_LAST_SUCCESS, 0),
+                prefs.getLong(PREFS_KEY_LAST_ATTEMPT, 0),
+                prefs.getInt(PREFS_KEY_FAILURE_COUNT, 0));
+        return scheduler;
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static void scheduleAt(Context context, long time) {
+        PendingIntent operation = PendingIntent.getService(context, 0,
+                new Intent(context, SyncService.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        AlarmManager alarmManager =
+                (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.RTC, time, operation);
+    }
+}
@@ -0,0 +1,623 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpMethods;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.util.IOUtils;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link com.google.api.client.http.HttpTransport} that keeps a disk cache of responses which
+ * carry an <code>ETag</code> or <code>Last-Modified</code> header. Cached requests are revalidated
+ * with a conditional request, and a <code>304 Not Modified</code> answer is served from disk.
+ * <p>
+ * <code>GET</code> requests are always cacheable. Endpoints exposes some read-only queries as
+ * <code>POST</code>, those can be made cacheable by naming the last segment of their path.
+ * <p>
+ * Each account has a transport of its own, and entries are keyed by the account rather than by
+ * its credentials, which are refreshed regularly. Transports of several accounts may share a
+ * directory. Entries are evicted when they were not used for longer than a maximum age, and the
+ * least recently used ones when the directory grows over a maximum size.
+ */
+public class CachingHttpTransport extends HttpTransport {
+
+    private static final String TAG = "CachingHttpTransport";
+    private static final String USER_AGENT = "User-Agent";
+
+    private final HttpTransport mDelegate;
+    private final HttpRequestFactory mRequestFactory;
+    private final File mDirectory;
+    private final long mMaxSize;
+    private final long mMaxAgeMillis;
+    private final String mAccount;
+    private final Set<String> mCacheablePostMethods;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    /**
+     * @param delegate transport that performs the actual requests
+     * @param directory directory to keep the cached responses in
+     * @param maxSize maximum number of bytes to keep on disk
+     * @param maxAgeMillis time after which an entry that was not used is evicted
+     * @param account account whose requests go through this transport
+     * @param cacheablePostMethods last path segments of <code>POST</code> requests that are
+     * read-only and may be cached
+     */
+    public CachingHttpTransport(HttpTransport delegate, File directory, long maxSize,
+            long maxAgeMillis, String account, String... cacheablePostMethods) {
+        mDelegate = delegate;
+        mRequestFactory = delegate.createRequestFactory();
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        mMaxAgeMillis = maxAgeMillis;
+        mAccount = account;
+        mCacheablePostMethods = new HashSet<String>(Arrays.asList(cacheablePostMethods));
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Unable to create cache directory " + mDirectory);
+        }
+    }
+
+    @Override
+    public boolean supportsMethod(String method) throws IOException {
+        return mDelegate.supportsMethod(method);
+    }
+
+    @Override
+    public void shutdown() throws IOException {
+        mDelegate.shutdown();
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+        return new CachingRequest(method, url);
+    }
+
+    /**
+     * Returns the number of requests that were answered from the cache.
+     *
+     * @return
+     */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * Returns the number of cacheable requests that were answered with a full <code>200</code>
+     * response.
+     *
+     * @return
+     */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    @Override
+    public String toString() {
+        long hits = mHitCount.get();
+        long lookups = hits + mMissCount.get();
+        return "CachingHttpTransport(" + mAccount + "): " + hits + " hits, " + mMissCount.get()
+                + " misses, " + (lookups == 0 ? 0 : Math.round(100.0 * hits / lookups))
+                + "% hits";
+    }
+
+    private boolean isCacheable(String method, String url) {
+        if (HttpMethods.GET.equals(method)) {
+            return true;
+        }
+        if (HttpMethods.POST.equals(method)) {
+            String path = new GenericUrl(url).getRawPath();
+            String lastSegment = null == path ? "" : path.substring(path.lastIndexOf('/') + 1);
+            return mCacheablePostMethods.contains(lastSegment);
+        }
+        return false;
+    }
+
+    private class CachingRequest extends LowLevelHttpRequest {
+
+        private final String mMethod;
+        private final String mUrl;
+        private final List<String> mHeaderNames = new ArrayList<String>();
+        private final List<String> mHeaderValues = new ArrayList<String>();
+        private int mConnectTimeout = -1;
+        private int mReadTimeout = -1;
+
+        CachingRequest(String method, String url) {
+            mMethod = method;
+            mUrl = url;
+        }
+
+        @Override
+        public void addHeader(String name, String value) throws IOException {
+            mHeaderNames.add(name);
+            mHeaderValues.add(value);
+        }
+
+        @Override
+        public void setTimeout(int connectTimeout, int readTimeout) throws IOException {
+            mConnectTimeout = connectTimeout;
+            mReadTimeout = readTimeout;
+        }
+
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+            byte[] body = null;
+            if (null != getStreamingContent()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                getStreamingContent().writeTo(out);
+                body = out.toByteArray();
+            }
+
+            boolean cacheable = isCacheable(mMethod, mUrl);
+            File entryFile = cacheable ? new File(mDirectory, cacheKey(body)) : null;
+            CacheEntry entry = cacheable ? CacheEntry.read(entryFile) : null;
+
+            HttpRequest request = mRequestFactory.buildRequest(mMethod, new GenericUrl(mUrl),
+                    null == body ? null : new ByteArrayContent(getContentType(), body));
+            request.setThrowExceptionOnExecuteError(false);
+            request.setNumberOfRetries(0);
+            request.setFollowRedirects(false);
+            if (mConnectTimeout >= 0) {
+                request.setConnectTimeout(mConnectTimeout);
+            }
+            if (mReadTimeout >= 0) {
+                request.setReadTimeout(mReadTimeout);
+            }
+            HttpHeaders headers = request.getHeaders();
+            Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+            for (int i = 0; i < mHeaderNames.size(); i++) {
+                List<String> list = values.get(mHeaderNames.get(i));
+                if (null == list) {
+                    list = new ArrayList<String>();
+                    values.put(mHeaderNames.get(i), list);
+                }
+                list.add(mHeaderValues.get(i));
+            }
+            for (Map.Entry<String, List<String>> header : values.entrySet()) {
+                if (USER_AGENT.equalsIgnoreCase(header.getKey())) {
+                    continue;
+                }
+                headers.set(header.getKey(), header.getValue());
+            }
+            List<String> userAgent = values.get(USER_AGENT);
+            if (null != userAgent && !userAgent.isEmpty()) {
+                // the inner request appends the library suffix again, it is sent once
+                String value = userAgent.get(0);
+                if (value.endsWith(HttpRequest.USER_AGENT_SUFFIX)) {
+                    value = value.substring(0,
+                            value.length() - HttpRequest.USER_AGENT_SUFFIX.length()).trim();
+                }
+                headers.setUserAgent(value.length() == 0 ? null : value);
+            }
+            if (null != getContentEncoding()) {
+                headers.setContentEncoding(getContentEncoding());
+            }
+            if (null != entry) {
+                if (null != entry.etag) {
+                    headers.setIfNoneMatch(entry.etag);
+                }
+                if (null != entry.lastModified) {
+                    headers.setIfModifiedSince(entry.lastModified);
+                }
+            }
+
+            HttpResponse response = request.execute();
+            if (!cacheable || (response.getStatusCode() != 200
+                    && (null == entry || response.getStatusCode() != 304))) {
+                // nothing to cache, the content streams to the caller as it arrives
+                return new StreamedResponse(response);
+            }
+            try {
+                if (response.getStatusCode() == 304) {
+                    mHitCount.incrementAndGet();
+                    // keeps the entry from being evicted as unused
+                    entryFile.setLastModified(System.currentTimeMillis());
+                    return entry.toResponse();
+                }
+                mMissCount.incrementAndGet();
+                CacheEntry fresh = CacheEntry.fromResponse(response);
+                if (null != fresh.etag || null != fresh.lastModified) {
+                    fresh.write(entryFile);
+                    trimToSize();
+                } else if (null != entry) {
+                    // the server no longer validates this resource
+                    entryFile.delete();
+                }
+                return fresh.toResponse();
+            } finally {
+                response.disconnect();
+            }
+        }
+
+        /*
+         * The key covers everything that may change the answer, including the account of the
+         * caller, so that one account can never be served another account's data. Credentials
+         * are left out, they change with every token refresh while the answer does not.
+         */
+        private String cacheKey(byte[] body) throws IOException {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                digest.update(mAccount.getBytes("UTF-8"));
+                digest.update((byte) 0);
+                digest.update(mMethod.getBytes("UTF-8"));
+                digest.update(mUrl.getBytes("UTF-8"));
+                if (null != body) {
+                    digest.update(body);
+                }
+                StringBuilder sb = new StringBuilder();
+                for (byte b : digest.digest()) {
+                    sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                    sb.append(Character.forDigit(b & 0xf, 16));
+                }
+                return sb.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+    }
+
+    /*
+     * Deletes the entries not used for longer than the maximum age, then the least recently used
+     * entries until the cache fits in its maximum size.
+     */
+    private synchronized void trimToSize() {
+        File[] files = mDirectory.listFiles();
+        if (null == files) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - mMaxAgeMillis;
+        long size = 0;
+        for (File file : files) {
+            if (file.lastModified() < oldest && file.delete()) {
+                continue;
+            }
+            size += file.length();
+        }
+        if (size <= mMaxSize) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && size > mMaxSize; i++) {
+            size -= files[i].length();
+            files[i].delete();
+        }
+    }
+
+    /**
+     * A fully buffered response, either read from the network or from disk.
+     */
+    private static class CacheEntry {
+
+        int statusCode;
+        String reasonPhrase;
+        String contentType;
+        String etag;
+        String lastModified;
+        final List<String> headerNames = new ArrayList<String>();
+        final List<String> headerValues = new ArrayList<String>();
+        byte[] content;
+
+        static CacheEntry fromResponse(HttpResponse response) throws IOException {
+            CacheEntry entry = new CacheEntry();
+            entry.statusCode = response.getStatusCode();
+            entry.reasonPhrase = response.getStatusMessage();
+            entry.contentType = response.getContentType();
+            HttpHeaders headers = response.getHeaders();
+            entry.etag = headers.getETag();
+            entry.lastModified = headers.getLastModified();
+            copyHeaders(headers, entry.headerNames, entry.headerValues);
+            InputStream content = response.getContent();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (null != content) {
+                IOUtils.copy(content, out);
+            }
+            entry.content = out.toByteArray();
+            return entry;
+        }
+
+        static CacheEntry read(File file) {
+            if (!file.exists()) {
+                return null;
+            }
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new FileInputStream(file));
+                CacheEntry entry = new CacheEntry();
+                entry.statusCode = in.readInt();
+                entry.reasonPhrase = readNullable(in);
+                entry.contentType = readNullable(in);
+                entry.etag = readNullable(in);
+                entry.lastModified = readNullable(in);
+                int headerCount = in.readInt();
+                for (int i = 0; i < headerCount; i++) {
+                    entry.headerNames.add(in.readUTF());
+                    entry.headerValues.add(in.readUTF());
+                }
+                entry.content = new byte[in.readInt()];
+                in.readFully(entry.content);
+                return entry;
+            } catch (IOException e) {
+                Log.w(TAG, "Discarding unreadable cache entry " + file, e);
+                file.delete();
+                return null;
+            } finally {
+                closeQuietly(in);
+            }
+        }
+
+        void write(File file) {
+            // hedged requests may write the same entry at the same time
+            File temp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new FileOutputStream(temp));
+                out.writeInt(statusCode);
+                writeNullable(out, reasonPhrase);
+                writeNullable(out, contentType);
+                writeNullable(out, etag);
+                writeNullable(out, lastModified);
+                out.writeInt(headerNames.size());
+                for (int i = 0; i < headerNames.size(); i++) {
+                    out.writeUTF(headerNames.get(i));
+                    out.writeUTF(headerValues.get(i));
+                }
+                out.writeInt(content.length);
+                out.write(content);
+                out.close();
+                out = null;
+                if (!temp.renameTo(file)) {
+                    temp.delete();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write cache entry " + file, e);
+                temp.delete();
+            } finally {
+                closeQuietly(out);
+            }
+        }
+
+        LowLevelHttpResponse toResponse() {
+            return new BufferedResponse(this);
+        }
+
+        private static String readNullable(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+
+        private static void writeNullable(DataOutputStream out, String value)
+                throws IOException {
+            out.writeBoolean(null != value);
+            if (null != value) {
+                out.writeUTF(value);
+            }
+        }
+
+        private static void closeQuietly(Closeable closeable) {
+            if (null != closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /*
+     * Copies the headers of a response, except those describing the encoding of its content: the
+     * content is handed on decoded, so its original encoding and length are gone.
+     */
+    private static void copyHeaders(HttpHeaders headers, List<String> names,
+            List<String> values) {
+        for (Map.Entry<String, Object> header : headers.entrySet()) {
+            String name = header.getKey();
+            if ("Content-Encoding".equalsIgnoreCase(name)
+                    || "Content-Length".equalsIgnoreCase(name)) {
+                continue;
+            }
+            Object value = header.getValue();
+            if (value instanceof Collection) {
+                for (Object item : (Collection<?>) value) {
+                    names.add(name);
+                    values.add(String.valueOf(item));
+                }
+            } else if (null != value) {
+                names.add(name);
+                values.add(String.valueOf(value));
+            }
+        }
+    }
+
+    /**
+     * A response that is not cached, handed on without buffering: its decoded content is read
+     * from the network as the caller reads it, and the connection is released when the caller
+     * disconnects the response.
+     */
+    private static class StreamedResponse extends LowLevelHttpResponse {
+
+        private final HttpResponse mResponse;
+        private final List<String> mHeaderNames = new ArrayList<String>();
+        private final List<String> mHeaderValues = new ArrayList<String>();
+
+        StreamedResponse(HttpResponse response) {
+            mResponse = response;
+            copyHeaders(response.getHeaders(), mHeaderNames, mHeaderValues);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return mResponse.getContent();
+        }
+
+        @Override
+        public String getContentEncoding() throws IOException {
+            return null;
+        }
+
+        /* the decoded length is not known before the content is read */
+        @Override
+        public long getContentLength() throws IOException {
+            return -1;
+        }
+
+        @Override
+        public String getContentType() throws IOException {
+            return mResponse.getContentType();
+        }
+
+        @Override
+        public String getStatusLine() throws IOException {
+            return "HTTP/1.1 " + getStatusCode() + (null == getReasonPhrase() ? ""
+                    : " " + getReasonPhrase());
+        }
+
+        @Override
+        public int getStatusCode() throws IOException {
+            return mResponse.getStatusCode();
+        }
+
+        @Override
+        public String getReasonPhrase() throws IOException {
+            return mResponse.getStatusMessage();
+        }
+
+        @Override
+        public int getHeaderCount() throws IOException {
+            return mHeaderNames.size();
+        }
+
+        @Override
+        public String getHeaderName(int index) throws IOException {
+            return mHeaderNames.get(index);
+        }
+
+        @Override
+        public String getHeaderValue(int index) throws IOException {
+            return mHeaderValues.get(index);
+        }
+
+        @Override
+        public void disconnect() throws IOException {
+            mResponse.disconnect();
+        }
+    }
+
+    private static class BufferedResponse extends LowLevelHttpResponse {
+
+        private final CacheEntry mEntry;
+
+        BufferedResponse(CacheEntry entry) {
+            mEntry = entry;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new ByteArrayInputStream(mEntry.content);
+        }
+
+        @Override
+        public String getContentEncoding() throws IOException {
+            return null;
+        }
+
+        @Override
+        public long getContentLength() throws IOException {
+            return mEntry.content.length;
+        }
+
+        @Override
+        public String getContentType() throws IOException {
+            return mEntry.contentType;
+        }
+
+        @Override
+        public String getStatusLine() throws IOException {
+            return "HTTP/1.1 " + getStatusCode() + (null == mEntry.reasonPhrase ? ""
+                    : " " + mEntry.reasonPhrase);
+        }
+
+        @Override
+        public int getStatusCode() throws IOException {
+            return mEntry.statusCode;
+        }
+
+        @Override
+        public String getReasonPhrase() throws IOException {
+            return mEntry.reasonPhrase;
+        }
+
+        /*
+         * The original length was dropped with the encoding, report the length of the decoded
+         * content as the last header instead.
+         */
+        @Override
+        public int getHeaderCount() throws IOException {
+            return mEntry.headerNames.size() + 1;
+        }
+
+        @Override
+        public String getHeaderName(int index) throws IOException {
+            return index == mEntry.headerNames.size() ? "Content-Length"
+                    : mEntry.headerNames.get(index);
+        }
+
+        @Override
+        public String getHeaderValue(int index) throws IOException {
+            return index == mEntry.headerValues.size() ? String.valueOf(mEntry.content.length)
+                    : mEntry.headerValues.get(index);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable, compact counterpart of
+ * {@link com.appspot.udacity_extras.conference.model.Conference}. Dates are kept as epoch
+ * milliseconds and counts as primitives, so a conference costs a handful of fields instead of a
+ * map of boxed values.
+ */
+public final class CompactConference {
+
+    /**
+     * Value of a date that the server did not provide.
+     */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    /**
+     * Value of a count or month that the server did not provide.
+     */
+    public static final int UNKNOWN = -1;
+
+    private static final List<String> NO_TOPICS = Collections.emptyList();
+
+    private final String mWebsafeKey;
+    private final String mName;
+    private final String mDescription;
+    private final String mOrganizerDisplayName;
+    private final String mCity;
+    /* built once, so that binding and filtering rows do not allocate */
+    private final List<String> mTopics;
+    private final long mStartDate;
+    private final long mEndDate;
+    private final int mMonth;
+    private final int mMaxAttendees;
+    private final int mSeatsAvailable;
+
+    public CompactConference(String websafeKey, String name, String description,
+            String organizerDisplayName, String city, String[] topics, long startDate,
+            long endDate, int month, int maxAttendees, int seatsAvailable) {
+        this(websafeKey, name, description, organizerDisplayName, city,
+                null == topics || 0 == topics.length
+                        ? NO_TOPICS : Collections.unmodifiableList(Arrays.asList(topics)),
+                startDate, endDate, month, maxAttendees, seatsAvailable);
+    }
+
+    private CompactConference(String websafeKey, String name, String description,
+            String organizerDisplayName, String city, List<String> topics, long startDate,
+            long endDate, int month, int maxAttendees, int seatsAvailable) {
+        mWebsafeKey = websafeKey;
+        mName = name;
+        mDescription = description;
+        mOrganizerDisplayName = organizerDisplayName;
+        mCity = city;
+        mTopics = topics;
+        mStartDate = startDate;
+        mEndDate = endDate;
+        mMonth = month;
+        mMaxAttendees = maxAttendees;
+        mSeatsAvailable = seatsAvailable;
+    }
+
+    public String getWebsafeKey() {
+        return mWebsafeKey;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public String getOrganizerDisplayName() {
+        return mOrganizerDisplayName;
+    }
+
+    public String getCity() {
+        return mCity;
+    }
+
+    /**
+     * Returns an unmodifiable view of the topics, never <code>null</code>.
+     *
+     * @return
+     */
+    public List<String> getTopics() {
+        return mTopics;
+    }
+
+    /**
+     * Returns the start date in epoch milliseconds, or {@link #NO_DATE}.
+     *
+     * @return
+     */
+    public long getStartDate() {
+        return mStartDate;
+    }
+
+    /**
+     * Returns the end date in epoch milliseconds, or {@link #NO_DATE}.
+     *
+     * @return
+     */
+    public long getEndDate() {
+        return mEndDate;
+    }
+
+    /**
+     * Returns the month of the conference, or {@link #UNKNOWN}.
+     *
+     * @return
+     */
+    public int getMonth() {
+        return mMonth;
+    }
+
+    /**
+     * Returns the maximum number of attendees, or {@link #UNKNOWN}.
+     *
+     * @return
+     */
+    public int getMaxAttendees() {
+        return mMaxAttendees;
+    }
+
+    /**
+     * Returns the number of seats available, or {@link #UNKNOWN}.
+     *
+     * @return
+     */
+    public int getSeatsAvailable() {
+        return mSeatsAvailable;
+    }
+
+    /**
+     * Returns a copy of this conference with a different number of seats available.
+     *
+     * @param seatsAvailable
+     * @return
+     */
+    public CompactConference withSeatsAvailable(int seatsAvailable) {
+        return new CompactConference(mWebsafeKey, mName, mDescription, mOrganizerDisplayName,
+                mCity, mTopics, mStartDate, mEndDate, mMonth, mMaxAttendees, seatsAvailable);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        CompactConference that = (CompactConference) o;
+
+        return mStartDate == that.mStartDate
+                && mEndDate == that.mEndDate
+                && mMonth == that.mMonth
+                && mMaxAttendees == that.mMaxAttendees
+                && mSeatsAvailable == that.mSeatsAvailable
+                && equal(mWebsafeKey, that.mWebsafeKey)
+                && equal(mName, that.mName)
+                && equal(mDescription, that.mDescription)
+                && equal(mOrganizerDisplayName, that.mOrganizerDisplayName)
+                && equal(mCity, that.mCity)
+                && mTopics.equals(that.mTopics);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mWebsafeKey != null ? mWebsafeKey.hashCode() : 0;
+        result = 31 * result + (mName != null ? mName.hashCode() : 0);
+        result = 31 * result + (int) (mStartDate ^ (mStartDate >>> 32));
+        result = 31 * result + mSeatsAvailable;
+        return result;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
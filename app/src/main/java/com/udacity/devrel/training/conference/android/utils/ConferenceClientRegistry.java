@@ -0,0 +1,98 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import com.appspot.udacity_extras.conference.Conference;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps one Endpoints client per account and tracks which account is current. Clients are kept
+ * once built, so switching back to an account reuses its client and its authorization. All
+ * methods are thread-safe: a background task that reads the current client once keeps using the
+ * same account until it is done, even if the user switches accounts in the meantime.
+ */
+public class ConferenceClientRegistry {
+
+    private final ConcurrentMap<String, Conference> mClients =
+            new ConcurrentHashMap<String, Conference>();
+    private volatile String mCurrentAccount;
+
+    /**
+     * Returns the client of an account, or <code>null</code> if none was registered.
+     *
+     * @param account
+     * @return
+     */
+    public Conference getClient(String account) {
+        return mClients.get(account);
+    }
+
+    /**
+     * Registers the client of an account, unless one is already registered. Returns the client
+     * registered for the account after the call.
+     *
+     * @param account
+     * @param client
+     * @return
+     */
+    public Conference register(String account, Conference client) {
+        Conference registered = mClients.putIfAbsent(account, client);
+        return null == registered ? client : registered;
+    }
+
+    /**
+     * Forgets the client of an account. If it was the current account, there is no current
+     * account anymore.
+     *
+     * @param account
+     */
+    public synchronized void unregister(String account) {
+        mClients.remove(account);
+        if (account.equals(mCurrentAccount)) {
+            mCurrentAccount = null;
+        }
+    }
+
+    /**
+     * Makes an account current. Register its client first, so that readers never see an
+     * account without a client. Returns the account that was current before.
+     *
+     * @param account may be <code>null</code> to have no current account
+     * @return
+     */
+    public synchronized String setCurrentAccount(String account) {
+        String previous = mCurrentAccount;
+        mCurrentAccount = account;
+        return previous;
+    }
+
+    public String getCurrentAccount() {
+        return mCurrentAccount;
+    }
+
+    /**
+     * Returns the client of the current account, or <code>null</code> if there is no current
+     * account. Read it once per operation, so that the whole operation runs for one account.
+     *
+     * @return
+     */
+    public Conference getCurrentClient() {
+        String account = mCurrentAccount;
+        return null == account ? null : mClients.get(account);
+    }
+}
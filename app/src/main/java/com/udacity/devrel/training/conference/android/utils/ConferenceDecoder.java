@@ -0,0 +1,192 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import com.google.api.client.json.JsonParser;
+import com.google.api.client.json.JsonToken;
+import com.google.api.client.util.DateTime;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes conferences straight from a {@link com.google.api.client.json.JsonParser} into
+ * {@link com.udacity.devrel.training.conference.android.utils.CompactConference}s, without
+ * building the intermediate {@link com.appspot.udacity_extras.conference.model.Conference}
+ * objects. Cities, topics and organizers repeat a lot across conferences, so a decoder shares one
+ * instance of each distinct value.
+ */
+public class ConferenceDecoder {
+
+    private final Map<String, String> mPool = new HashMap<String, String>();
+    private String mNextPageToken;
+
+    /**
+     * Decodes a <code>ConferenceCollection</code>. The parser must be positioned before or on the
+     * start of the collection object. Returns an empty list if the collection has no items.
+     *
+     * @param parser
+     * @return
+     * @throws IOException
+     */
+    public List<CompactConference> decodeCollection(JsonParser parser) throws IOException {
+        List<CompactConference> conferences = new ArrayList<CompactConference>();
+        mNextPageToken = null;
+        if (!startObject(parser)) {
+            return conferences;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("items".equals(field) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    conferences.add(decodeFields(parser));
+                }
+            } else if ("nextPageToken".equals(field) && token == JsonToken.VALUE_STRING) {
+                mNextPageToken = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return conferences;
+    }
+
+    /**
+     * Returns the continuation token of the last decoded collection, or <code>null</code> if it
+     * was the last page.
+     *
+     * @return
+     */
+    public String getNextPageToken() {
+        return mNextPageToken;
+    }
+
+    /**
+     * Decodes a single <code>Conference</code>. The parser must be positioned before or on the
+     * start of the conference object. Returns <code>null</code> for an empty document.
+     *
+     * @param parser
+     * @return
+     * @throws IOException
+     */
+    public CompactConference decodeConference(JsonParser parser) throws IOException {
+        if (!startObject(parser)) {
+            return null;
+        }
+        return decodeFields(parser);
+    }
+
+    private static boolean startObject(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (null == token) {
+            token = parser.nextToken();
+        }
+        if (null == token) {
+            return false;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object but found " + token);
+        }
+        return true;
+    }
+
+    /*
+     * Reads the fields of the current object, leaving the parser on its END_OBJECT.
+     */
+    private CompactConference decodeFields(JsonParser parser) throws IOException {
+        String websafeKey = null;
+        String name = null;
+        String description = null;
+        String organizerDisplayName = null;
+        String city = null;
+        String[] topics = null;
+        long startDate = CompactConference.NO_DATE;
+        long endDate = CompactConference.NO_DATE;
+        int month = CompactConference.UNKNOWN;
+        int maxAttendees = CompactConference.UNKNOWN;
+        int seatsAvailable = CompactConference.UNKNOWN;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("websafeKey".equals(field)) {
+                websafeKey = parser.getText();
+            } else if ("name".equals(field)) {
+                name = parser.getText();
+            } else if ("description".equals(field)) {
+                description = parser.getText();
+            } else if ("organizerDisplayName".equals(field)) {
+                organizerDisplayName = pooled(parser.getText());
+            } else if ("city".equals(field)) {
+                city = pooled(parser.getText());
+            } else if ("topics".equals(field) && token == JsonToken.START_ARRAY) {
+                topics = decodeStrings(parser);
+            } else if ("startDate".equals(field)) {
+                startDate = DateTime.parseRfc3339(parser.getText()).getValue();
+            } else if ("endDate".equals(field)) {
+                endDate = DateTime.parseRfc3339(parser.getText()).getValue();
+            } else if ("month".equals(field)) {
+                month = intValue(parser, token);
+            } else if ("maxAttendees".equals(field)) {
+                maxAttendees = intValue(parser, token);
+            } else if ("seatsAvailable".equals(field)) {
+                seatsAvailable = intValue(parser, token);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new CompactConference(websafeKey, name, description, organizerDisplayName, city,
+                topics, startDate, endDate, month, maxAttendees, seatsAvailable);
+    }
+
+    private String[] decodeStrings(JsonParser parser) throws IOException {
+        List<String> values = new ArrayList<String>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && null != token) {
+            if (token == JsonToken.VALUE_STRING) {
+                values.add(pooled(parser.getText()));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values.toArray(new String[values.size()]);
+    }
+
+    /*
+     * Endpoints encodes 32-bit integers as JSON numbers but 64-bit ones as strings, accept both.
+     */
+    private static int intValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            return Integer.parseInt(parser.getText());
+        }
+        return parser.getIntValue();
+    }
+
+    private String pooled(String value) {
+        String pooled = mPool.get(value);
+        if (null == pooled) {
+            mPool.put(value, value);
+            return value;
+        }
+        return pooled;
+    }
+}
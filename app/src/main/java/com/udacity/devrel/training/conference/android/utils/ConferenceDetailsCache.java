@@ -0,0 +1,125 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import android.content.ComponentCallbacks2;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+/**
+ * A bounded, least recently used cache of the full records of conferences, keyed by websafe key.
+ * Only the conferences the user looked at are kept, up to a size in bytes estimated from their
+ * text. The cache shrinks when the system runs low on memory, see {@link #onTrimMemory(int)}.
+ * All methods are thread-safe.
+ */
+public class ConferenceDetailsCache {
+
+    private static final String TAG = "ConferenceDetailsCache";
+
+    /* rough size of a conference without its text: object headers, fields, arrays */
+    private static final int CONFERENCE_OVERHEAD_BYTES = 160;
+
+    private final int mMaxSize;
+    private final LruCache<String, CompactConference> mCache;
+
+    /**
+     * @param maxSize maximum estimated size of the cached conferences, in bytes
+     */
+    public ConferenceDetailsCache(int maxSize) {
+        mMaxSize = maxSize;
+        mCache = new LruCache<String, CompactConference>(maxSize) {
+            @Override
+            protected int sizeOf(String key, CompactConference conference) {
+                return estimateSize(conference);
+            }
+        };
+    }
+
+    /**
+     * Returns the cached conference, or <code>null</code> if it is not cached.
+     *
+     * @param websafeKey
+     * @return
+     */
+    public CompactConference get(String websafeKey) {
+        return mCache.get(websafeKey);
+    }
+
+    public void put(CompactConference conference) {
+        if (null != conference && null != conference.getWebsafeKey()) {
+            mCache.put(conference.getWebsafeKey(), conference);
+        }
+    }
+
+    /**
+     * Returns the share of lookups that found the conference cached, from <code>0</code> to
+     * <code>1</code>.
+     *
+     * @return
+     */
+    public double getHitRatio() {
+        int hits = mCache.hitCount();
+        int lookups = hits + mCache.missCount();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Shrinks the cache according to a level passed to
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}: it is emptied when the
+     * process is likely to be killed or memory is critically low, and halved when memory is
+     * getting low. Hiding the UI alone keeps the cache, so details reopen fast.
+     *
+     * @param level
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            onLowMemory();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            Log.d(TAG, "Trimming to half, level " + level);
+            mCache.trimToSize(mMaxSize / 2);
+        }
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public void onLowMemory() {
+        Log.d(TAG, "Evicting all conferences");
+        mCache.evictAll();
+    }
+
+    @Override
+    public String toString() {
+        return "ConferenceDetailsCache: " + mCache.size() + "/" + mMaxSize + " bytes, "
+                + Math.round(100 * getHitRatio()) + "% hits";
+    }
+
+    private static int estimateSize(CompactConference conference) {
+        int chars = length(conference.getWebsafeKey()) + length(conference.getName())
+                + length(conference.getDescription()) + length(conference.getCity())
+                + length(conference.getOrganizerDisplayName());
+        for (String topic : conference.getTopics()) {
+            chars += length(topic);
+        }
+        return CONFERENCE_OVERHEAD_BYTES + 2 * chars;
+    }
+
+    private static int length(String text) {
+        return null == text ? 0 : text.length();
+    }
+}
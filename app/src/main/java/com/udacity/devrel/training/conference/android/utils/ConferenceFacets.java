@@ -0,0 +1,216 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A facet index over a list of conferences. Each value of each {@link Facet} maps to a
+ * {@link java.util.BitSet} of the rows holding it, so narrowing the list is a matter of OR-ing
+ * bitsets within a facet and AND-ing them across facets, and facet counts are popcounts. The
+ * index is built once per list and never changes, build a new one when the list changes.
+ */
+public class ConferenceFacets {
+
+    /**
+     * The facets conferences can be narrowed by.
+     */
+    public enum Facet {
+        CITY, MONTH, TOPIC
+    }
+
+    /* orders month numbers as numbers, so that "2" comes before "10" */
+    private static final Comparator<String> NUMERIC_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String lhs, String rhs) {
+            return lhs.length() != rhs.length() ? lhs.length() - rhs.length()
+                    : lhs.compareTo(rhs);
+        }
+    };
+
+    private final List<DecoratedConference> mConferences;
+    private final Map<Facet, Map<String, BitSet>> mIndex =
+            new EnumMap<Facet, Map<String, BitSet>>(Facet.class);
+    private final BitSet mAll;
+
+    /**
+     * Builds the index. Month values are the month numbers as strings, from <code>"1"</code> to
+     * <code>"12"</code>.
+     *
+     * @param conferences
+     */
+    public ConferenceFacets(List<DecoratedConference> conferences) {
+        mConferences = new ArrayList<DecoratedConference>(conferences);
+        for (Facet facet : Facet.values()) {
+            mIndex.put(facet, Facet.MONTH == facet
+                    ? new TreeMap<String, BitSet>(NUMERIC_ORDER)
+                    : new TreeMap<String, BitSet>());
+        }
+        mAll = new BitSet(mConferences.size());
+        mAll.set(0, mConferences.size());
+        for (int row = 0; row < mConferences.size(); row++) {
+            CompactConference conference = mConferences.get(row).getConference();
+            if (null != conference.getCity()) {
+                add(Facet.CITY, conference.getCity(), row);
+            }
+            if (CompactConference.UNKNOWN != conference.getMonth()) {
+                add(Facet.MONTH, String.valueOf(conference.getMonth()), row);
+            }
+            for (String topic : conference.getTopics()) {
+                add(Facet.TOPIC, topic, row);
+            }
+        }
+    }
+
+    private void add(Facet facet, String value, int row) {
+        Map<String, BitSet> values = mIndex.get(facet);
+        BitSet rows = values.get(value);
+        if (null == rows) {
+            rows = new BitSet(mConferences.size());
+            values.put(value, rows);
+        }
+        rows.set(row);
+    }
+
+    /**
+     * Returns the distinct values of a facet, in their natural order, months in calendar order.
+     *
+     * @param facet
+     * @return
+     */
+    public Set<String> getValues(Facet facet) {
+        return Collections.unmodifiableSet(mIndex.get(facet).keySet());
+    }
+
+    /**
+     * Returns the rows matching a selection.
+     *
+     * @param selection
+     * @return
+     */
+    public BitSet select(Selection selection) {
+        return select(selection, null);
+    }
+
+    /*
+     * Intersects the rows of all selected facets but one, so that counts of a facet reflect what
+     * the user would get by changing their choice in that facet.
+     */
+    private BitSet select(Selection selection, Facet excluded) {
+        BitSet result = (BitSet) mAll.clone();
+        for (Facet facet : Facet.values()) {
+            Set<String> values = selection.getValues(facet);
+            if (facet == excluded || values.isEmpty()) {
+                continue;
+            }
+            BitSet union = new BitSet(mConferences.size());
+            Map<String, BitSet> index = mIndex.get(facet);
+            for (String value : values) {
+                BitSet rows = index.get(value);
+                if (null != rows) {
+                    union.or(rows);
+                }
+            }
+            result.and(union);
+        }
+        return result;
+    }
+
+    /**
+     * Returns, for each value of <code>facet</code>, how many conferences match it together with
+     * the selection made in the other facets.
+     *
+     * @param facet
+     * @param selection
+     * @return
+     */
+    public Map<String, Integer> getCounts(Facet facet, Selection selection) {
+        BitSet others = select(selection, facet);
+        Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+        BitSet scratch = new BitSet(mConferences.size());
+        for (Map.Entry<String, BitSet> entry : mIndex.get(facet).entrySet()) {
+            scratch.clear();
+            scratch.or(entry.getValue());
+            scratch.and(others);
+            counts.put(entry.getKey(), scratch.cardinality());
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the conferences matching a selection, in the order of the indexed list.
+     *
+     * @param selection
+     * @return
+     */
+    public List<DecoratedConference> filter(Selection selection) {
+        BitSet rows = select(selection);
+        List<DecoratedConference> result = new ArrayList<DecoratedConference>(rows.cardinality());
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            result.add(mConferences.get(row));
+        }
+        return result;
+    }
+
+    /**
+     * The values chosen in each facet. An empty facet does not narrow the list.
+     */
+    public static class Selection {
+
+        private final Map<Facet, Set<String>> mValues =
+                new EnumMap<Facet, Set<String>>(Facet.class);
+
+        public Selection() {
+            for (Facet facet : Facet.values()) {
+                mValues.put(facet, new HashSet<String>());
+            }
+        }
+
+        public Set<String> getValues(Facet facet) {
+            return mValues.get(facet);
+        }
+
+        public void setValues(Facet facet, Set<String> values) {
+            mValues.get(facet).clear();
+            mValues.get(facet).addAll(values);
+        }
+
+        public void clear() {
+            for (Set<String> values : mValues.values()) {
+                values.clear();
+            }
+        }
+
+        public boolean isEmpty() {
+            for (Set<String> values : mValues.values()) {
+                if (!values.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prepares the date and city labels of
+ * {@link com.udacity.devrel.training.conference.android.utils.DecoratedConference}s ahead of
+ * time, so that list rows and detail cards do not format dates while they are shown. Labels are
+ * stamped with a generation that is bumped whenever the locale or the time zone changes, which
+ * makes every label formatted before the change stale.
+ */
+public class ConferenceLabels {
+
+    private static final AtomicInteger sGeneration = new AtomicInteger();
+
+    /* the locale labels of the current generation are formatted in */
+    private static volatile Locale sLocale = Locale.getDefault();
+
+    /**
+     * Returns the current label generation.
+     *
+     * @return
+     */
+    public static int getGeneration() {
+        // the locale broadcast may arrive after rows of the recreated activity were bound
+        Locale locale = Locale.getDefault();
+        if (locale != sLocale) {
+            sLocale = locale;
+            invalidate();
+        }
+        return sGeneration.get();
+    }
+
+    /**
+     * Marks all labels as stale.
+     */
+    public static void invalidate() {
+        sGeneration.incrementAndGet();
+    }
+
+    /**
+     * Prepares the labels of the conferences that have none in the current generation. Meant to
+     * be called off the UI thread.
+     *
+     * @param context
+     * @param conferences may be <code>null</code>
+     */
+    public static void prepare(Context context, List<DecoratedConference> conferences) {
+        if (null == conferences) {
+            return;
+        }
+        int generation = getGeneration();
+        for (DecoratedConference conference : conferences) {
+            if (null == conference.getCityAndDateLabel(generation)) {
+                prepare(context, conference, generation);
+            }
+        }
+    }
+
+    /**
+     * Prepares the labels of a conference in the current generation, if needed, and returns its
+     * city and date label.
+     *
+     * @param context
+     * @param conference
+     * @return
+     */
+    public static String getCityAndDateLabel(Context context, DecoratedConference conference) {
+        int generation = getGeneration();
+        String label = conference.getCityAndDateLabel(generation);
+        if (null == label) {
+            prepare(context, conference, generation);
+            label = conference.getCityAndDateLabel(generation);
+        }
+        return label;
+    }
+
+    /**
+     * Prepares the labels of a conference in the current generation, if needed, and returns its
+     * date label.
+     *
+     * @param context
+     * @param conference
+     * @return
+     */
+    public static String getDateLabel(Context context, DecoratedConference conference) {
+        int generation = getGeneration();
+        String label = conference.getDateLabel(generation);
+        if (null == label) {
+            prepare(context, conference, generation);
+            label = conference.getDateLabel(generation);
+        }
+        return label;
+    }
+
+    private static void prepare(Context context, DecoratedConference decorated,
+            int generation) {
+        CompactConference conference = decorated.getConference();
+        String date = Utils.getConferenceDate(context, conference);
+        String cityAndDate = conference.getCity() + ", " + date;
+        decorated.setLabels(date, cityAndDate, generation);
+    }
+
+    /**
+     * Returns the filter of the broadcasts that make labels stale, the locale and time zone
+     * changes.
+     *
+     * @return
+     */
+    public static IntentFilter getIntentFilter() {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_LOCALE_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        return filter;
+    }
+}
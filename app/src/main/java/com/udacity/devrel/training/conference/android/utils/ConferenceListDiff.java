@@ -0,0 +1,96 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a new list of conferences with the one shown, matching conferences by websafe key.
+ * The constructor takes a snapshot of the conferences of both lists, on the thread that owns
+ * them. {@link #compute()} only reads the snapshot and can run on any thread, while the owning
+ * thread keeps updating the lists. {@link #apply()} then makes the new conferences whose content
+ * did not change share the instance already shown.
+ */
+public class ConferenceListDiff {
+
+    private final List<DecoratedConference> mData;
+    private final CompactConference[] mShownConferences;
+    private final CompactConference[] mDataConferences;
+    private final CompactConference[] mKept;
+
+    /**
+     * Takes a snapshot of both lists. Call it on the thread that owns the lists.
+     *
+     * @param shown the conferences currently shown
+     * @param data the conferences to show instead
+     */
+    public ConferenceListDiff(List<DecoratedConference> shown, List<DecoratedConference> data) {
+        mData = new ArrayList<DecoratedConference>(data);
+        mShownConferences = conferences(shown);
+        mDataConferences = conferences(data);
+        mKept = new CompactConference[data.size()];
+    }
+
+    private static CompactConference[] conferences(List<DecoratedConference> list) {
+        CompactConference[] conferences = new CompactConference[list.size()];
+        for (int i = 0; i < conferences.length; i++) {
+            conferences[i] = list.get(i).getConference();
+        }
+        return conferences;
+    }
+
+    /**
+     * Matches the new conferences with the shown ones. Only reads the snapshot, so it can run on
+     * any thread.
+     *
+     * @return this diff
+     */
+    public ConferenceListDiff compute() {
+        Map<String, CompactConference> shownByKey =
+                new HashMap<String, CompactConference>(mShownConferences.length * 2);
+        for (CompactConference conference : mShownConferences) {
+            shownByKey.put(conference.getWebsafeKey(), conference);
+        }
+        for (int i = 0; i < mDataConferences.length; i++) {
+            CompactConference conference = mDataConferences[i];
+            CompactConference previous = shownByKey.get(conference.getWebsafeKey());
+            if (null != previous && previous.equals(conference)) {
+                mKept[i] = previous;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Makes the unchanged conferences of the new list share the instance already shown, so that
+     * their rows are not bound again. A conference updated since the snapshot keeps its update.
+     * Call it on the thread that owns the lists, after {@link #compute()}.
+     *
+     * @return the new list
+     */
+    public List<DecoratedConference> apply() {
+        for (int i = 0; i < mKept.length; i++) {
+            DecoratedConference decorated = mData.get(i);
+            if (null != mKept[i] && decorated.getConference() == mDataConferences[i]) {
+                decorated.setConference(mKept[i]);
+            }
+        }
+        return mData;
+    }
+}
@@ -0,0 +1,135 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One page of a paged conference query, along with what is needed to fetch the next page.
+ *
+ * @see ConferenceUtils#getFirstConferencePage(ConferenceQuery, int)
+ * @see ConferenceUtils#getNextConferencePage(ConferencePage)
+ */
+public class ConferencePage {
+
+    private final String mAccount;
+    private final ConferenceQuery mQuery;
+    private final List<DecoratedConference> mConferences;
+    private final String mNextPageToken;
+    private final Set<String> mRegisteredKeys;
+    private final long mProfileTime;
+    private final int mPageSize;
+    private final String mFields;
+
+    ConferencePage(String account, ConferenceQuery query, List<DecoratedConference> conferences,
+            String nextPageToken, Set<String> registeredKeys, long profileTime, int pageSize,
+            String fields) {
+        mAccount = account;
+        mQuery = query;
+        mConferences = conferences;
+        mNextPageToken = nextPageToken;
+        mRegisteredKeys = registeredKeys;
+        mProfileTime = profileTime;
+        mPageSize = pageSize;
+        mFields = fields;
+    }
+
+    /**
+     * Returns the partial-response mask the page was fetched with, or <code>null</code> if
+     * conferences have all their fields.
+     *
+     * @return
+     */
+    public String getFields() {
+        return mFields;
+    }
+
+    /**
+     * Returns the account this page was fetched for.
+     *
+     * @return
+     */
+    public String getAccount() {
+        return mAccount;
+    }
+
+    /**
+     * Returns the query this page belongs to.
+     *
+     * @return
+     */
+    public ConferenceQuery getQuery() {
+        return mQuery;
+    }
+
+    /**
+     * Returns the conferences of this page, or <code>null</code> if the page is empty.
+     *
+     * @return
+     */
+    public List<DecoratedConference> getConferences() {
+        return mConferences;
+    }
+
+    /**
+     * Returns the continuation token of the next page, or <code>null</code> if this is the last
+     * page.
+     *
+     * @return
+     */
+    public String getNextPageToken() {
+        return mNextPageToken;
+    }
+
+    public boolean hasNextPage() {
+        return null != mNextPageToken;
+    }
+
+    /* keys of the conferences the user attends, as of the profile fetched with the first page
+       and the registration changes confirmed since, when this page was fetched */
+    Set<String> getRegisteredKeys() {
+        return mRegisteredKeys;
+    }
+
+    /* when the profile was requested, in the elapsed realtime clock */
+    long getProfileTime() {
+        return mProfileTime;
+    }
+
+    int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Returns a copy of this page with copies of its conferences, which its holder can change
+     * without affecting other holders of this page.
+     *
+     * @return
+     */
+    ConferencePage copy() {
+        List<DecoratedConference> conferences = null;
+        if (null != mConferences) {
+            conferences = new ArrayList<DecoratedConference>(mConferences.size());
+            for (DecoratedConference decorated : mConferences) {
+                conferences.add(decorated.copy());
+            }
+        }
+        return new ConferencePage(mAccount, mQuery, conferences, mNextPageToken, mRegisteredKeys,
+                mProfileTime, mPageSize, mFields);
+    }
+}
@@ -0,0 +1,262 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import com.appspot.udacity_extras.conference.model.ConferenceQueryForm;
+import com.appspot.udacity_extras.conference.model.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A validated conference query. City, topic, month and maximum attendees are sent to the server
+ * as {@link com.appspot.udacity_extras.conference.model.Filter}s of a
+ * {@link com.appspot.udacity_extras.conference.model.ConferenceQueryForm}, so only matching
+ * conferences are downloaded. The server cannot filter on available seats, that condition is
+ * applied to the downloaded conferences by {@link #matches(CompactConference)}.
+ * <p>
+ * Instances are created with a {@link ConferenceQuery.Builder}.
+ */
+public final class ConferenceQuery {
+
+    /**
+     * A query without any condition, matching all conferences.
+     */
+    public static final ConferenceQuery ALL = new Builder().build();
+
+    /**
+     * Comparison operators understood by the server.
+     */
+    public enum Operator {
+        EQ, NE, LT, LTEQ, GT, GTEQ
+    }
+
+    /* field names understood by the server */
+    private static final String FIELD_CITY = "CITY";
+    private static final String FIELD_TOPIC = "TOPIC";
+    private static final String FIELD_MONTH = "MONTH";
+    private static final String FIELD_MAX_ATTENDEES = "MAX_ATTENDEES";
+
+    private final String mCity;
+    private final String mTopic;
+    private final int mMonth;
+    private final Operator mMaxAttendeesOperator;
+    private final int mMaxAttendees;
+    private final boolean mSeatsAvailable;
+
+    private ConferenceQuery(Builder builder) {
+        mCity = builder.mCity;
+        mTopic = builder.mTopic;
+        mMonth = builder.mMonth;
+        mMaxAttendeesOperator = builder.mMaxAttendeesOperator;
+        mMaxAttendees = builder.mMaxAttendees;
+        mSeatsAvailable = builder.mSeatsAvailable;
+    }
+
+    public String getCity() {
+        return mCity;
+    }
+
+    public String getTopic() {
+        return mTopic;
+    }
+
+    /**
+     * Returns the month, from <code>1</code> to <code>12</code>, or
+     * {@link CompactConference#UNKNOWN} if the query is not restricted to a month.
+     *
+     * @return
+     */
+    public int getMonth() {
+        return mMonth;
+    }
+
+    /**
+     * Returns the operator applied to the maximum number of attendees, or <code>null</code> if
+     * the query is not restricted on it.
+     *
+     * @return
+     */
+    public Operator getMaxAttendeesOperator() {
+        return mMaxAttendeesOperator;
+    }
+
+    public int getMaxAttendees() {
+        return mMaxAttendees;
+    }
+
+    public boolean isSeatsAvailable() {
+        return mSeatsAvailable;
+    }
+
+    /**
+     * Returns <code>true</code> if this query has no condition at all.
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return !hasServerFilters() && !mSeatsAvailable;
+    }
+
+    private boolean hasServerFilters() {
+        return null != mCity || null != mTopic || CompactConference.UNKNOWN != mMonth
+                || null != mMaxAttendeesOperator;
+    }
+
+    /**
+     * Returns a new form holding the filters this query sends to the server, or
+     * <code>null</code> if there are none.
+     *
+     * @return
+     */
+    public ConferenceQueryForm toForm() {
+        if (!hasServerFilters()) {
+            return null;
+        }
+        List<Filter> filters = new ArrayList<Filter>();
+        if (null != mCity) {
+            filters.add(filter(FIELD_CITY, Operator.EQ, mCity));
+        }
+        if (null != mTopic) {
+            filters.add(filter(FIELD_TOPIC, Operator.EQ, mTopic));
+        }
+        if (CompactConference.UNKNOWN != mMonth) {
+            filters.add(filter(FIELD_MONTH, Operator.EQ, String.valueOf(mMonth)));
+        }
+        if (null != mMaxAttendeesOperator) {
+            filters.add(filter(FIELD_MAX_ATTENDEES, mMaxAttendeesOperator,
+                    String.valueOf(mMaxAttendees)));
+        }
+        return new ConferenceQueryForm().setFilters(filters);
+    }
+
+    private static Filter filter(String field, Operator operator, String value) {
+        return new Filter().setField(field).setOperator(operator.name()).setValue(value);
+    }
+
+    /**
+     * Returns <code>true</code> if a conference returned by the server also meets the conditions
+     * that the server cannot evaluate.
+     *
+     * @param conference
+     * @return
+     */
+    public boolean matches(CompactConference conference) {
+        return !mSeatsAvailable || conference.getSeatsAvailable() != 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        ConferenceQuery that = (ConferenceQuery) o;
+
+        return mMonth == that.mMonth
+                && mMaxAttendees == that.mMaxAttendees
+                && mSeatsAvailable == that.mSeatsAvailable
+                && mMaxAttendeesOperator == that.mMaxAttendeesOperator
+                && (mCity != null ? mCity.equals(that.mCity) : that.mCity == null)
+                && (mTopic != null ? mTopic.equals(that.mTopic) : that.mTopic == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mCity != null ? mCity.hashCode() : 0;
+        result = 31 * result + (mTopic != null ? mTopic.hashCode() : 0);
+        result = 31 * result + mMonth;
+        result = 31 * result + (mMaxAttendeesOperator != null
+                ? mMaxAttendeesOperator.hashCode() : 0);
+        result = 31 * result + mMaxAttendees;
+        result = 31 * result + (mSeatsAvailable ? 1 : 0);
+        return result;
+    }
+
+    /**
+     * Builds a {@link ConferenceQuery}. Each setter validates its argument and throws an
+     * {@link java.lang.IllegalArgumentException} if it cannot be sent to the server.
+     */
+    public static class Builder {
+
+        private String mCity;
+        private String mTopic;
+        private int mMonth = CompactConference.UNKNOWN;
+        private Operator mMaxAttendeesOperator;
+        private int mMaxAttendees;
+        private boolean mSeatsAvailable;
+
+        public Builder city(String city) {
+            mCity = checkText("city", city);
+            return this;
+        }
+
+        public Builder topic(String topic) {
+            mTopic = checkText("topic", topic);
+            return this;
+        }
+
+        /**
+         * @param month from <code>1</code> to <code>12</code>
+         */
+        public Builder month(int month) {
+            if (month < 1 || month > 12) {
+                throw new IllegalArgumentException("month must be between 1 and 12: " + month);
+            }
+            mMonth = month;
+            return this;
+        }
+
+        /**
+         * Restricts the maximum number of attendees. The server accepts an inequality on a
+         * single field only, this is the only field inequalities are built for.
+         */
+        public Builder maxAttendees(Operator operator, int maxAttendees) {
+            if (null == operator) {
+                throw new IllegalArgumentException("operator must not be null");
+            }
+            if (maxAttendees < 0) {
+                throw new IllegalArgumentException(
+                        "maxAttendees must not be negative: " + maxAttendees);
+            }
+            mMaxAttendeesOperator = operator;
+            mMaxAttendees = maxAttendees;
+            return this;
+        }
+
+        /**
+         * Keeps only conferences that still have seats available.
+         */
+        public Builder seatsAvailable() {
+            mSeatsAvailable = true;
+            return this;
+        }
+
+        public ConferenceQuery build() {
+            return new ConferenceQuery(this);
+        }
+
+        private static String checkText(String name, String value) {
+            if (null == value || value.trim().length() == 0) {
+                throw new IllegalArgumentException(name + " must not be empty");
+            }
+            return value.trim();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+/**
+ * What a list row currently shows, so that binding a row again only touches the views whose
+ * value changed. Conferences are immutable, so the same instance means the same name,
+ * description and dates. Binding allocates nothing.
+ */
+public class ConferenceRowState {
+
+    /* parts of a row returned by update(), as bits */
+    public static final int CONTENT = 1;
+    public static final int REGISTRATION = 1 << 1;
+    public static final int SELECTION = 1 << 2;
+
+    private CompactConference mConference;
+    private int mGeneration;
+    private boolean mRegistered;
+    private boolean mSelected;
+
+    /**
+     * Records what the row is about to show and returns the parts that differ from what it
+     * showed, as a combination of {@link #CONTENT}, {@link #REGISTRATION} and {@link #SELECTION}.
+     * A new row shows no content, and neither registration nor selection.
+     *
+     * @param decorated
+     * @param generation label generation, see {@link ConferenceLabels#getGeneration()}
+     * @param selected
+     * @return
+     */
+    public int update(DecoratedConference decorated, int generation, boolean selected) {
+        int changed = 0;
+        CompactConference conference = decorated.getConference();
+        if (mConference != conference || mGeneration != generation) {
+            mConference = conference;
+            mGeneration = generation;
+            changed |= CONTENT;
+        }
+        boolean registered = decorated.isRegistered();
+        if (mRegistered != registered) {
+            mRegistered = registered;
+            changed |= REGISTRATION;
+        }
+        if (mSelected != selected) {
+            mSelected = selected;
+            changed |= SELECTION;
+        }
+        return changed;
+    }
+
+    public boolean isRegistered() {
+        return mRegistered;
+    }
+
+    public boolean isSelected() {
+        return mSelected;
+    }
+}
@@ -0,0 +1,234 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory inverted index over the name, organizer and description of conferences, for
+ * search-as-you-type. Tokens are lower-cased and stripped of accents. Every word of a query must
+ * match the start of some token of a conference, and results are ranked by where the words
+ * matched: the name counts more than the organizer, which counts more than the description, and
+ * whole tokens count more than prefixes.
+ * <p>
+ * Conferences are indexed by their websafe key and can be added, replaced or removed one at a
+ * time, and updated with the text of their full record once it is fetched. All methods are thread-safe. Conferences are tokenized outside of the lock and the lock is
+ * taken once per conference, so a search made while a page is being indexed only waits for the
+ * conference being inserted.
+ */
+public class ConferenceSearchIndex {
+
+    private static final int WEIGHT_NAME = 4;
+    private static final int WEIGHT_ORGANIZER = 2;
+    private static final int WEIGHT_DESCRIPTION = 1;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /* token -> websafe key -> weight of the best field holding the token */
+    private final TreeMap<String, Map<String, Integer>> mPostings =
+            new TreeMap<String, Map<String, Integer>>();
+
+    /* websafe key -> indexed conference and its tokens, for replacing and removing */
+    private final Map<String, Document> mDocuments = new HashMap<String, Document>();
+
+    /**
+     * Adds a conference to the index, replacing any previous version of it.
+     *
+     * @param decorated
+     */
+    public void add(DecoratedConference decorated) {
+        String key = decorated.getConference().getWebsafeKey();
+        if (null == key) {
+            return;
+        }
+        insert(key, decorated, tokenize(decorated.getConference()));
+    }
+
+    /**
+     * Indexes the text of the full record of a conference already in the index, such as the
+     * description the list fields leave out. Searches keep returning the indexed conference. Does
+     * nothing if the conference is not indexed.
+     *
+     * @param record
+     */
+    public void update(CompactConference record) {
+        String key = record.getWebsafeKey();
+        if (null == key) {
+            return;
+        }
+        Map<String, Integer> tokens = tokenize(record);
+        synchronized (this) {
+            Document document = mDocuments.get(key);
+            if (null != document) {
+                insert(key, document.conference, tokens);
+            }
+        }
+    }
+
+    private static Map<String, Integer> tokenize(CompactConference conference) {
+        Map<String, Integer> tokens = new HashMap<String, Integer>();
+        tokenize(conference.getDescription(), WEIGHT_DESCRIPTION, tokens);
+        tokenize(conference.getOrganizerDisplayName(), WEIGHT_ORGANIZER, tokens);
+        tokenize(conference.getName(), WEIGHT_NAME, tokens);
+        return tokens;
+    }
+
+    private synchronized void insert(String key, DecoratedConference decorated,
+            Map<String, Integer> tokens) {
+        remove(key);
+        for (Map.Entry<String, Integer> token : tokens.entrySet()) {
+            Map<String, Integer> postings = mPostings.get(token.getKey());
+            if (null == postings) {
+                postings = new HashMap<String, Integer>();
+                mPostings.put(token.getKey(), postings);
+            }
+            postings.put(key, token.getValue());
+        }
+        mDocuments.put(key, new Document(decorated, tokens.keySet().toArray(
+                new String[tokens.size()])));
+    }
+
+    /**
+     * Adds several conferences, see {@link #add(DecoratedConference)}. Searches made meanwhile
+     * see the conferences added so far.
+     *
+     * @param conferences
+     */
+    public void addAll(List<DecoratedConference> conferences) {
+        for (DecoratedConference conference : conferences) {
+            add(conference);
+        }
+    }
+
+    /**
+     * Removes a conference from the index. Does nothing if it is not indexed.
+     *
+     * @param websafeKey
+     */
+    public synchronized void remove(String websafeKey) {
+        Document document = mDocuments.remove(websafeKey);
+        if (null == document) {
+            return;
+        }
+        for (String token : document.tokens) {
+            Map<String, Integer> postings = mPostings.get(token);
+            postings.remove(websafeKey);
+            if (postings.isEmpty()) {
+                mPostings.remove(token);
+            }
+        }
+    }
+
+    /**
+     * Returns the conferences matching every word of <code>query</code>, best matches first.
+     * Returns an empty list for a query without words.
+     *
+     * @param query
+     * @return
+     */
+    public synchronized List<DecoratedConference> search(String query) {
+        Map<String, Integer> tokens = new HashMap<String, Integer>();
+        tokenize(query, 1, tokens);
+        if (tokens.isEmpty()) {
+            return new ArrayList<DecoratedConference>();
+        }
+
+        Map<String, Integer> scores = null;
+        for (String word : tokens.keySet()) {
+            Map<String, Integer> wordScores = new HashMap<String, Integer>();
+            SortedMap<String, Map<String, Integer>> matches =
+                    mPostings.subMap(word, word + Character.MAX_VALUE);
+            for (Map.Entry<String, Map<String, Integer>> match : matches.entrySet()) {
+                boolean exact = match.getKey().length() == word.length();
+                for (Map.Entry<String, Integer> posting : match.getValue().entrySet()) {
+                    if (null != scores && !scores.containsKey(posting.getKey())) {
+                        continue;
+                    }
+                    int score = exact ? posting.getValue() * 2 : posting.getValue();
+                    Integer best = wordScores.get(posting.getKey());
+                    if (null == best || best < score) {
+                        wordScores.put(posting.getKey(), score);
+                    }
+                }
+            }
+            if (null != scores) {
+                for (Map.Entry<String, Integer> entry : wordScores.entrySet()) {
+                    entry.setValue(entry.getValue() + scores.get(entry.getKey()));
+                }
+            }
+            scores = wordScores;
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+
+        final Map<String, Integer> ranking = scores;
+        List<String> keys = new ArrayList<String>(ranking.keySet());
+        Collections.sort(keys, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                return ranking.get(rhs) - ranking.get(lhs);
+            }
+        });
+        List<DecoratedConference> results = new ArrayList<DecoratedConference>(keys.size());
+        for (String key : keys) {
+            results.add(mDocuments.get(key).conference);
+        }
+        return results;
+    }
+
+    /*
+     * Adds the normalized tokens of a text to tokens, keeping the highest weight of each.
+     */
+    private static void tokenize(String text, int weight, Map<String, Integer> tokens) {
+        if (null == text) {
+            return;
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+                .replaceAll("").toLowerCase(Locale.US);
+        for (String token : SEPARATORS.split(normalized)) {
+            if (token.length() == 0) {
+                continue;
+            }
+            Integer previous = tokens.get(token);
+            if (null == previous || previous < weight) {
+                tokens.put(token, weight);
+            }
+        }
+    }
+
+    private static class Document {
+
+        final DecoratedConference conference;
+        final String[] tokens;
+
+        Document(DecoratedConference conference, String[] tokens) {
+            this.conference = conference;
+            this.tokens = tokens;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An on-device store of the last known list of
+ * {@link com.udacity.devrel.training.conference.android.utils.DecoratedConference}s. Each
+ * conference is kept one column per field along with the user's registration status, so that
+ * the list can be shown before the server has answered. Registration status differs between
+ * accounts, so each account has a store of its own.
+ * <p>
+ * The store also keeps the queue of registration changes the server has not confirmed yet, one
+ * row per conference holding the status the user wants, so that changes made offline survive a
+ * restart and are sent once back online.
+ */
+public class ConferenceStore extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME_PREFIX = "conferences-";
+    private static final String DATABASE_NAME_SUFFIX = ".db";
+    /* the single store used before stores were kept per account */
+    private static final String LEGACY_DATABASE_NAME = "conferences.db";
+    private static final String PREFS_NAME = "conference_store";
+    private static final String PREF_LEGACY_DELETED = "legacy_deleted";
+    private static final int DATABASE_VERSION = 3;
+
+    private static final String TABLE_CONFERENCES = "conferences";
+    private static final String COLUMN_KEY = "websafe_key";
+    private static final String COLUMN_POSITION = "position";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_DESCRIPTION = "description";
+    private static final String COLUMN_ORGANIZER = "organizer";
+    private static final String COLUMN_CITY = "city";
+    private static final String COLUMN_TOPICS = "topics";
+    private static final String COLUMN_START_DATE = "start_date";
+    private static final String COLUMN_END_DATE = "end_date";
+    private static final String COLUMN_MONTH = "month";
+    private static final String COLUMN_MAX_ATTENDEES = "max_attendees";
+    private static final String COLUMN_SEATS_AVAILABLE = "seats_available";
+    private static final String COLUMN_REGISTERED = "registered";
+
+    private static final String TABLE_PENDING = "pending_registrations";
+    private static final String COLUMN_REGISTER = "register";
+    private static final String COLUMN_SEQUENCE = "sequence";
+
+    private static final String[] COLUMNS = new String[]{COLUMN_KEY, COLUMN_NAME,
+            COLUMN_DESCRIPTION, COLUMN_ORGANIZER, COLUMN_CITY, COLUMN_TOPICS, COLUMN_START_DATE,
+            COLUMN_END_DATE, COLUMN_MONTH, COLUMN_MAX_ATTENDEES, COLUMN_SEATS_AVAILABLE,
+            COLUMN_REGISTERED};
+
+    /* separates topics in the topics column, topics are free text entered by organizers */
+    private static final String TOPIC_SEPARATOR = "\u001f";
+
+    private static final Map<String, ConferenceStore> sInstances =
+            new HashMap<String, ConferenceStore>();
+
+    /**
+     * Returns the store of an account, creating it if needed.
+     *
+     * @param context
+     * @param account
+     * @return
+     */
+    public static synchronized ConferenceStore getInstance(Context context, String account) {
+        ConferenceStore store = sInstances.get(account);
+        if (null == store) {
+            if (sInstances.isEmpty()) {
+                deleteLegacyDatabase(context);
+            }
+            store = new ConferenceStore(context.getApplicationContext(), account);
+            sInstances.put(account, store);
+        }
+        return store;
+    }
+
+    /* deletes the store used before stores were kept per account, once per installation */
+    private static void deleteLegacyDatabase(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!prefs.getBoolean(PREF_LEGACY_DELETED, false)) {
+            context.deleteDatabase(LEGACY_DATABASE_NAME);
+            prefs.edit().putBoolean(PREF_LEGACY_DELETED, true).apply();
+        }
+    }
+
+    private ConferenceStore(Context context, String account) {
+        super(context, getDatabaseName(account), null, DATABASE_VERSION);
+    }
+
+    /*
+     * Names the store of an account after the SHA-1 of the account, so that every account gets
+     * a store of its own whatever characters it has, and the account does not show in file names.
+     */
+    private static String getDatabaseName(String account) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder sb = new StringBuilder(DATABASE_NAME_PREFIX);
+            for (byte b : digest.digest(account.getBytes("UTF-8"))) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.append(DATABASE_NAME_SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Android device provides SHA-1
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_CONFERENCES + " ("
+                + COLUMN_KEY + " TEXT PRIMARY KEY, "
+                + COLUMN_POSITION + " INTEGER NOT NULL, "
+                + COLUMN_NAME + " TEXT, "
+                + COLUMN_DESCRIPTION + " TEXT, "
+                + COLUMN_ORGANIZER + " TEXT, "
+                + COLUMN_CITY + " TEXT, "
+                + COLUMN_TOPICS + " TEXT, "
+                + COLUMN_START_DATE + " INTEGER NOT NULL, "
+                + COLUMN_END_DATE + " INTEGER NOT NULL, "
+                + COLUMN_MONTH + " INTEGER NOT NULL, "
+                + COLUMN_MAX_ATTENDEES + " INTEGER NOT NULL, "
+                + COLUMN_SEATS_AVAILABLE + " INTEGER NOT NULL, "
+                + COLUMN_REGISTERED + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_PENDING + " ("
+                + COLUMN_KEY + " TEXT PRIMARY KEY, "
+                + COLUMN_REGISTER + " INTEGER NOT NULL, "
+                + COLUMN_SEQUENCE + " INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // the conferences are only a cache of server data, so it is safe to start over, but
+        // pending registrations are changes made by the user and are kept
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_CONFERENCES);
+        onCreate(db);
+    }
+
+    /**
+     * Returns the stored list of conferences in the order they were saved, or <code>null</code>
+     * if nothing has been stored yet. Must not be called from the UI thread.
+     *
+     * @return
+     */
+    public List<DecoratedConference> load() {
+        Cursor cursor = getReadableDatabase().query(TABLE_CONFERENCES, COLUMNS, null, null, null,
+                null, COLUMN_POSITION);
+        try {
+            if (cursor.getCount() == 0) {
+                return null;
+            }
+            List<DecoratedConference> conferences =
+                    new ArrayList<DecoratedConference>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                String topics = cursor.getString(5);
+                CompactConference conference = new CompactConference(cursor.getString(0),
+                        cursor.getString(1), cursor.getString(2), cursor.getString(3),
+                        cursor.getString(4),
+                        TextUtils.isEmpty(topics) ? null : topics.split(TOPIC_SEPARATOR),
+                        cursor.getLong(6), cursor.getLong(7), cursor.getInt(8), cursor.getInt(9),
+                        cursor.getInt(10));
+                conferences.add(new DecoratedConference(conference, cursor.getInt(11) != 0));
+            }
+            return conferences;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Replaces the stored list of conferences. Passing <code>null</code> clears the store. Must
+     * not be called from the UI thread.
+     *
+     * @param conferences
+     */
+    public void save(List<DecoratedConference> conferences) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_CONFERENCES, null, null);
+            if (null != conferences) {
+                ContentValues values = new ContentValues();
+                int position = 0;
+                for (DecoratedConference decorated : conferences) {
+                    CompactConference conference = decorated.getConference();
+                    values.clear();
+                    values.put(COLUMN_KEY, conference.getWebsafeKey());
+                    values.put(COLUMN_POSITION, position++);
+                    values.put(COLUMN_NAME, conference.getName());
+                    values.put(COLUMN_DESCRIPTION, conference.getDescription());
+                    values.put(COLUMN_ORGANIZER, conference.getOrganizerDisplayName());
+                    values.put(COLUMN_CITY, conference.getCity());
+                    values.put(COLUMN_TOPICS,
+                            TextUtils.join(TOPIC_SEPARATOR, conference.getTopics()));
+                    values.put(COLUMN_START_DATE, conference.getStartDate());
+                    values.put(COLUMN_END_DATE, conference.getEndDate());
+                    values.put(COLUMN_MONTH, conference.getMonth());
+                    values.put(COLUMN_MAX_ATTENDEES, conference.getMaxAttendees());
+                    values.put(COLUMN_SEATS_AVAILABLE, conference.getSeatsAvailable());
+                    values.put(COLUMN_REGISTERED, decorated.isRegistered() ? 1 : 0);
+                    db.insertWithOnConflict(TABLE_CONFERENCES, null, values,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Updates the registration status and seat count of a stored conference. Does nothing if
+     * the conference is not stored. Must not be called from the UI thread.
+     *
+     * @param decorated
+     */
+    public void update(DecoratedConference decorated) {
+        CompactConference conference = decorated.getConference();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_SEATS_AVAILABLE, conference.getSeatsAvailable());
+        values.put(COLUMN_REGISTERED, decorated.isRegistered() ? 1 : 0);
+        getWritableDatabase().update(TABLE_CONFERENCES, values, COLUMN_KEY + " = ?",
+                new String[]{conference.getWebsafeKey()});
+    }
+
+    /**
+     * Queues a registration change and stores the new registration status and seat count of the
+     * conference, in a single transaction. Changes to the same conference are coalesced: the
+     * queue keeps only the status the user wants, in the position of the first change, and a
+     * change back to the status the server knows removes the conference from the queue. Must not
+     * be called from the UI thread.
+     *
+     * @param decorated the conference, with the change already applied
+     * @param wasRegistered registration status before the change
+     */
+    public void enqueueRegistration(DecoratedConference decorated, boolean wasRegistered) {
+        String websafeKey = decorated.getConference().getWebsafeKey();
+        boolean register = decorated.isRegistered();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            update(decorated);
+            Cursor cursor = db.query(TABLE_PENDING, new String[]{COLUMN_REGISTER},
+                    COLUMN_KEY + " = ?", new String[]{websafeKey}, null, null, null);
+            // a queued change means the server knows the opposite status
+            Boolean serverRegistered;
+            try {
+                serverRegistered = cursor.moveToFirst() ? cursor.getInt(0) == 0 : null;
+            } finally {
+                cursor.close();
+            }
+            if (null == serverRegistered) {
+                serverRegistered = wasRegistered;
+            }
+            if (serverRegistered == register) {
+                db.delete(TABLE_PENDING, COLUMN_KEY + " = ?", new String[]{websafeKey});
+            } else {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_REGISTER, register ? 1 : 0);
+                if (db.update(TABLE_PENDING, values, COLUMN_KEY + " = ?",
+                        new String[]{websafeKey}) == 0) {
+                    values.put(COLUMN_KEY, websafeKey);
+                    values.put(COLUMN_SEQUENCE, nextSequence(db));
+                    db.insert(TABLE_PENDING, null, values);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the queued registration changes in the order they were made, keyed by websafe
+     * conference key, <code>true</code> to register and <code>false</code> to unregister. Must not
+     * be called from the UI thread.
+     *
+     * @return
+     */
+    public Map<String, Boolean> getPendingRegistrations() {
+        Cursor cursor = getReadableDatabase().query(TABLE_PENDING,
+                new String[]{COLUMN_KEY, COLUMN_REGISTER}, null, null, null, null,
+                COLUMN_SEQUENCE);
+        try {
+            Map<String, Boolean> pending = new LinkedHashMap<String, Boolean>();
+            while (cursor.moveToNext()) {
+                pending.put(cursor.getString(0), cursor.getInt(1) != 0);
+            }
+            return pending;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Removes a registration change from the queue once the server has answered it. Nothing is
+     * removed if the user changed the registration again since it was read from the queue. Must
+     * not be called from the UI thread.
+     *
+     * @param websafeKey
+     * @param register the change as read from the queue
+     * @param applied <code>false</code> if the server refused the change, the stored registration
+     * status is then reverted
+     */
+    public void completeRegistration(String websafeKey, boolean register, boolean applied) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            int removed = db.delete(TABLE_PENDING, COLUMN_KEY + " = ? AND " + COLUMN_REGISTER
+                    + " = ?", new String[]{websafeKey, register ? "1" : "0"});
+            if (removed > 0 && !applied) {
+                // the seat count is corrected by the next refresh
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_REGISTERED, register ? 0 : 1);
+                db.update(TABLE_CONFERENCES, values, COLUMN_KEY + " = ?",
+                        new String[]{websafeKey});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Applies the queued registration changes to conferences fetched from the server, which do
+     * not know about them yet. Must not be called from the UI thread.
+     *
+     * @param conferences
+     */
+    public void applyPendingRegistrations(List<DecoratedConference> conferences) {
+        if (null == conferences || conferences.isEmpty()) {
+            return;
+        }
+        Map<String, Boolean> pending = getPendingRegistrations();
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (DecoratedConference decorated : conferences) {
+            Boolean register = pending.get(decorated.getConference().getWebsafeKey());
+            if (null != register) {
+                decorated.applyRegistration(register);
+            }
+        }
+    }
+
+    private static long nextSequence(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT MAX(" + COLUMN_SEQUENCE + ") FROM " + TABLE_PENDING,
+                null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) + 1 : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -15,20 +15,46 @@
 
 package com.udacity.devrel.training.conference.android.utils;
 
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.json.JsonParser;
 import com.udacity.devrel.training.conference.android.AppConstants;
+import com.udacity.devrel.training.conference.android.BuildConfig;
 
-import com.appspot.udacity_extras.conference.model.Conference;
-import com.appspot.udacity_extras.conference.model.ConferenceCollection;
+import com.appspot.udacity_extras.conference.model.ConferenceQueryForm;
 import com.appspot.udacity_extras.conference.model.Profile;
 import com.appspot.udacity_extras.conference.model.WrappedBoolean;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A utility class for communication with the Cloud Endpoint.
@@ -36,16 +62,231 @@ import java.util.List;
 public class ConferenceUtils {
 
     private final static String TAG = "ConferenceUtils";
-    private static com.appspot.udacity_extras.conference.Conference sApiServiceHandler;
 
+    /* clients of all accounts used so far, sharing one transport */
+    private static final ConferenceClientRegistry sClients = new ConferenceClientRegistry();
+
+    /* token managers of the accounts, kept apart from the clients so tokens can be warmed first */
+    private static final ConcurrentMap<String, TokenManager> sTokenManagers =
+            new ConcurrentHashMap<String, TokenManager>();
+
+    /**
+     * Executor used to fan out independent Endpoints calls so that they can be in flight at the
+     * same time.
+     */
+    private static final ExecutorService sExecutor = Executors.newCachedThreadPool();
+
+    /**
+     * Maximum number of bytes kept in the HTTP response cache.
+     */
+    private static final long HTTP_CACHE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Time after which an HTTP response cache entry that was not used is evicted.
+     */
+    private static final long HTTP_CACHE_MAX_AGE_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+    /* caching transports of the accounts, sharing one cache directory and one pool */
+    private static final Map<String, CachingHttpTransport> sHttpTransports =
+            new HashMap<String, CachingHttpTransport>();
+
+    /**
+     * Maximum estimated number of bytes of full conference records kept in memory.
+     */
+    private static final int DETAILS_CACHE_SIZE = 256 * 1024;
+
+    private static final ConferenceDetailsCache sDetailsCache =
+            new ConferenceDetailsCache(DETAILS_CACHE_SIZE);
+
+    /* registration changes confirmed by the server, per account and conference key, so that
+       pages decorated with an older profile reflect them */
+    private static final ConcurrentMap<String, ConcurrentMap<String, ConfirmedRegistration>>
+            sConfirmedRegistrations =
+            new ConcurrentHashMap<String, ConcurrentMap<String, ConfirmedRegistration>>();
+
+    /* concurrent fetches of the same page share one request, each caller gets a copy of the
+       page since its conferences are mutable */
+    private static final SingleFlight<List<Object>, ConferencePage> sPageFetches =
+            new SingleFlight<List<Object>, ConferencePage>();
+
+    /**
+     * Interval between two dumps of the collected metrics to the log, in debug builds.
+     */
+    private static final long METRICS_DUMP_INTERVAL_MINUTES = 5;
+
+    private static volatile MetricsSink sMetricsSink = new InMemoryMetricsSink();
+
+    /* names of the read-only calls, as recorded by the MetricsRequestInitializer */
+    private static final String CALL_QUERY_CONFERENCES = "POST queryConferences";
+    private static final String CALL_GET_PROFILE = "GET profile";
+    private static final String CALL_GET_CONFERENCE = "GET conference/*";
+
+    /**
+     * Partial-response mask of the conference list: the fields shown in list rows and used to
+     * search, refine and register, leaving out descriptions and attendee limits. The full record
+     * of a conference is fetched with {@link #getConference(String)} when it is shown.
+     */
+    public static final String LIST_FIELDS = "items(websafeKey,name,organizerDisplayName,city,"
+            + "topics,startDate,endDate,month,seatsAvailable),nextPageToken";
+
+    /* hedging of read-only calls */
+    private static final double HEDGE_PERCENTILE = 95;
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    private static final long HEDGE_MIN_DELAY_MILLIS = 250;
+    private static final long HEDGE_DEFAULT_DELAY_MILLIS = 2000;
+    private static ScheduledExecutorService sMetricsDumper;
+
+    /**
+     * Makes <code>email</code> the current account, building its service handler the first time
+     * the account is used.
+     *
+     * @param context
+     * @param email
+     */
     public static void build(Context context, String email) {
-        sApiServiceHandler = buildServiceHandler(context, email);
+        buildForAccount(context, email);
+        if (BuildConfig.DEBUG) {
+            startMetricsDump();
+        }
+        sClients.setCurrentAccount(email);
+    }
+
+    /**
+     * Builds the service handler of <code>email</code> if it was not built yet, without making it
+     * the current account, e.g. to send queued changes from the background.
+     *
+     * @param context
+     * @param email
+     */
+    public static void buildForAccount(Context context, String email) {
+        if (null == sClients.getClient(email)) {
+            sClients.register(email, buildServiceHandler(context, email));
+        }
+    }
+
+    /**
+     * Returns the current account, or <code>null</code> if no service handler was built yet.
+     *
+     * @return
+     */
+    public static String getCurrentAccount() {
+        return sClients.getCurrentAccount();
+    }
+
+    /**
+     * Forgets an account and its service handler, e.g. when the user clears it.
+     *
+     * @param email
+     */
+    public static void clearAccount(String email) {
+        if (null == email) {
+            return;
+        }
+        sClients.unregister(email);
+        synchronized (sHttpTransports) {
+            sHttpTransports.remove(email);
+        }
+        sConfirmedRegistrations.remove(email);
+        TokenManager tokenManager = sTokenManagers.remove(email);
+        if (null != tokenManager) {
+            tokenManager.close();
+        }
+    }
+
+    /**
+     * Fetches the token of an account ahead of its first request, so that requests do not wait
+     * for it. Blocks, call it off the UI thread.
+     *
+     * @param context
+     * @param email
+     * @throws IOException if no token could be fetched
+     */
+    public static void warmToken(Context context, String email) throws IOException {
+        getTokenManager(context, email).warm();
+    }
+
+    private static TokenManager getTokenManager(Context context, String email) {
+        TokenManager tokenManager = sTokenManagers.get(email);
+        if (null == tokenManager) {
+            GoogleAccountCredential credential = GoogleAccountCredential.usingAudience(
+                    context.getApplicationContext(), AppConstants.AUDIENCE);
+            credential.setSelectedAccountName(email);
+            tokenManager = new TokenManager(credential, AppConstants.JSON_FACTORY);
+            TokenManager existing = sTokenManagers.putIfAbsent(email, tokenManager);
+            if (null != existing) {
+                tokenManager = existing;
+            }
+        }
+        return tokenManager;
+    }
+
+    /*
+     * Returns the service handler of the current account, read once so that a call runs for a
+     * single account even if the user switches accounts meanwhile.
+     */
+    private static com.appspot.udacity_extras.conference.Conference getServiceHandler(String caller)
+            throws ConferenceException {
+        return getServiceHandler(sClients.getCurrentAccount(), caller);
+    }
+
+    private static com.appspot.udacity_extras.conference.Conference getServiceHandler(String account,
+            String caller) throws ConferenceException {
+        com.appspot.udacity_extras.conference.Conference handler =
+                null == account ? null : sClients.getClient(account);
+        if (null == handler) {
+            Log.e(TAG, caller + "(): no service handler was built");
+            throw new ConferenceException();
+        }
+        return handler;
+    }
+
+    /**
+     * Replaces the sink that receives the metrics of Endpoints calls. Takes effect for service
+     * handlers built afterwards.
+     *
+     * @param sink
+     */
+    public static void setMetricsSink(MetricsSink sink) {
+        sMetricsSink = sink;
+    }
+
+    public static MetricsSink getMetricsSink() {
+        return sMetricsSink;
+    }
+
+    /*
+     * Logs a snapshot of the in-memory metrics at a fixed interval, for local analysis.
+     */
+    private static synchronized void startMetricsDump() {
+        if (null != sMetricsDumper) {
+            return;
+        }
+        sMetricsDumper = Executors.newSingleThreadScheduledExecutor();
+        sMetricsDumper.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                MetricsSink sink = sMetricsSink;
+                if (sink instanceof InMemoryMetricsSink) {
+                    Log.d(TAG, "Endpoints metrics:\n" + ((InMemoryMetricsSink) sink).snapshot());
+                }
+                Log.d(TAG, sDetailsCache.toString());
+                synchronized (sHttpTransports) {
+                    for (CachingHttpTransport transport : sHttpTransports.values()) {
+                        Log.d(TAG, transport.toString());
+                    }
+                }
+                if (AppConstants.HTTP_TRANSPORT instanceof PooledHttpTransport) {
+                    Log.d(TAG, AppConstants.HTTP_TRANSPORT.toString());
+                }
+            }
+        }, METRICS_DUMP_INTERVAL_MINUTES, METRICS_DUMP_INTERVAL_MINUTES, TimeUnit.MINUTES);
     }
 
     /**
      * Returns a list of {@link com.udacity.devrel.training.conference.android.utils.DecoratedConference}s.
-     * This list includes information about what {@link com.appspot.udacity_extras.conference.model.Conference}s
-     * user has registered for.
+     * This list includes information about what {@link com.udacity.devrel.training.conference.android.utils.CompactConference}s
+     * user has registered for. The conference query and the profile lookup are issued
+     * concurrently and joined once both have returned.
      *
      * @return
      * @throws ConferenceException
@@ -53,80 +294,525 @@ public class ConferenceUtils {
      */
     public static List<DecoratedConference> getConferences()
             throws ConferenceException, IOException {
-        if (null == sApiServiceHandler) {
-            Log.e(TAG, "getConferences(): no service handler was built");
-            throw new ConferenceException();
+        return getConferences(null);
+    }
+
+    /**
+     * Returns all conferences like {@link #getConferences()}, with only the fields of a
+     * partial-response mask such as {@link #LIST_FIELDS}.
+     *
+     * @param fields partial-response mask, <code>null</code> for all fields
+     * @return
+     * @throws ConferenceException
+     */
+    public static List<DecoratedConference> getConferences(String fields)
+            throws ConferenceException, IOException {
+        return getFirstConferencePage(sClients.getCurrentAccount(), ConferenceQuery.ALL, 0,
+                fields).getConferences();
+    }
+
+    /**
+     * Returns the first page of at most <code>pageSize</code> conferences matching
+     * <code>query</code>, decorated like {@link #getConferences()}. A <code>pageSize</code> of
+     * <code>0</code> asks for all conferences. Servers that do not support paging return all
+     * conferences in a single page. Conditions the server cannot evaluate are applied after
+     * download, so a page may hold fewer conferences than requested.
+     * <p>
+     * Callers asking for the same page while it is being fetched share that fetch. Each caller
+     * receives its own copy of the page, so the conferences one caller updates, e.g. when the user
+     * registers, do not change under another.
+     *
+     * @param query
+     * @param pageSize
+     * @return
+     * @throws ConferenceException
+     */
+    public static ConferencePage getFirstConferencePage(ConferenceQuery query, int pageSize)
+            throws ConferenceException, IOException {
+        return getFirstConferencePage(sClients.getCurrentAccount(), query, pageSize, null);
+    }
+
+    /**
+     * Returns the first page of conferences for a given account, like
+     * {@link #getFirstConferencePage(ConferenceQuery, int)}, with only the fields of a
+     * partial-response mask. The following pages are fetched for the same account and with the
+     * same fields.
+     *
+     * @param account
+     * @param query
+     * @param pageSize
+     * @param fields partial-response mask such as {@link #LIST_FIELDS}, <code>null</code> for all
+     * fields
+     * @return
+     * @throws ConferenceException if no service handler was built for the account
+     */
+    public static ConferencePage getFirstConferencePage(final String account,
+            final ConferenceQuery query, final int pageSize, final String fields)
+            throws ConferenceException, IOException {
+        final com.appspot.udacity_extras.conference.Conference handler =
+                getServiceHandler(account, "getFirstConferencePage");
+        List<Object> key = Arrays.<Object>asList(handler, query, pageSize, fields);
+        return await(sPageFetches.execute(key, new Callable<ConferencePage>() {
+            @Override
+            public ConferencePage call() throws Exception {
+                return fetchFirstConferencePage(account, handler, query, pageSize, fields);
+            }
+        })).copy();
+    }
+
+    private static ConferencePage fetchFirstConferencePage(String account,
+            final com.appspot.udacity_extras.conference.Conference handler,
+            final ConferenceQuery query, final int pageSize, final String fields)
+            throws ConferenceException, IOException {
+        final long start = SystemClock.elapsedRealtime();
+        Future<DecodedPage> conferencesFuture = sExecutor.submit(
+                new Callable<DecodedPage>() {
+                    @Override
+                    public DecodedPage call() throws Exception {
+                        DecodedPage page = queryConferences(handler, query, pageSize, null,
+                                fields);
+                        Log.d(TAG, "queryConferences took "
+                                + (SystemClock.elapsedRealtime() - start) + "ms");
+                        return page;
+                    }
+                });
+        Future<Profile> profileFuture = sExecutor.submit(new Callable<Profile>() {
+            @Override
+            public Profile call() throws Exception {
+                Profile profile = getProfile(handler);
+                Log.d(TAG, "getProfile took " + (SystemClock.elapsedRealtime() - start) + "ms");
+                return profile;
+            }
+        });
+
+        DecodedPage page;
+        Profile profile;
+        try {
+            page = await(conferencesFuture);
+            profile = await(profileFuture);
+        } finally {
+            conferencesFuture.cancel(true);
+            profileFuture.cancel(true);
         }
+        Log.d(TAG, "getFirstConferencePage() took "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
 
-        com.appspot.udacity_extras.conference.Conference.QueryConferences
-                queryConferences = sApiServiceHandler.queryConferences(null);
-        ConferenceCollection conferenceCollection = queryConferences.execute();
+        Set<String> registeredConfKeys = new HashSet<String>();
+        if (null != profile && null != profile.getConferenceKeysToAttend()) {
+            registeredConfKeys.addAll(profile.getConferenceKeysToAttend());
+        }
+        applyConfirmedRegistrations(account, registeredConfKeys, start);
+        return new ConferencePage(account, query,
+                DecoratedConference.decorate(query, page.conferences, registeredConfKeys),
+                page.nextPageToken, registeredConfKeys, start, pageSize, fields);
+    }
 
-        if (conferenceCollection != null && conferenceCollection.getItems() != null) {
-            List<Conference> conferences = conferenceCollection.getItems();
-            List<DecoratedConference> decoratedList = null;
-            if (null == conferences || conferences.isEmpty()) {
-                return decoratedList;
+    /**
+     * Returns the page that follows <code>previous</code>. The registration status is taken from
+     * the profile fetched with the first page, so only one request is made, updated with the
+     * registration changes the server confirmed since. Changes still queued are not applied, see
+     * {@link ConferenceStore#applyPendingRegistrations(java.util.List)}. The page is fetched
+     * for the account of <code>previous</code>, even if the current account changed since. As
+     * with the first page, callers share a fetch in progress and each receives its own copy.
+     *
+     * @param previous
+     * @return
+     * @throws ConferenceException
+     */
+    public static ConferencePage getNextConferencePage(final ConferencePage previous)
+            throws ConferenceException, IOException {
+        final com.appspot.udacity_extras.conference.Conference handler =
+                getServiceHandler(previous.getAccount(), "getNextConferencePage");
+        if (!previous.hasNextPage()) {
+            return new ConferencePage(previous.getAccount(), previous.getQuery(), null, null,
+                    previous.getRegisteredKeys(), previous.getProfileTime(),
+                    previous.getPageSize(), previous.getFields());
+        }
+
+        List<Object> key = Arrays.<Object>asList(handler, previous.getQuery(),
+                previous.getPageSize(), previous.getNextPageToken(), previous.getFields());
+        return await(sPageFetches.execute(key, new Callable<ConferencePage>() {
+            @Override
+            public ConferencePage call() throws Exception {
+                DecodedPage page = queryConferences(handler, previous.getQuery(),
+                        previous.getPageSize(), previous.getNextPageToken(),
+                        previous.getFields());
+                Set<String> registeredKeys = new HashSet<String>(previous.getRegisteredKeys());
+                applyConfirmedRegistrations(previous.getAccount(), registeredKeys,
+                        previous.getProfileTime());
+                return new ConferencePage(previous.getAccount(), previous.getQuery(),
+                        DecoratedConference.decorate(previous.getQuery(), page.conferences,
+                                registeredKeys),
+                        page.nextPageToken, registeredKeys, previous.getProfileTime(),
+                        previous.getPageSize(), previous.getFields());
             }
-            decoratedList = new ArrayList<DecoratedConference>();
-            Profile profile = getProfile();
-            List<String> registeredConfKeys = null;
-            if (null != profile) {
-                registeredConfKeys = profile.getConferenceKeysToAttend();
+        })).copy();
+    }
+
+    /*
+     * Runs the conference query and decodes the response as it streams in, without building the
+     * generated model objects. The generated query form has no paging fields, so the page size
+     * and continuation token are sent as extra fields of the form. The query is read-only, so it
+     * is hedged. With a partial-response mask the server only sends the fields in the mask, the
+     * other fields of the decoded conferences are left unknown.
+     */
+    private static DecodedPage queryConferences(
+            final com.appspot.udacity_extras.conference.Conference handler,
+            final ConferenceQuery query, final int pageSize, final String pageToken,
+            final String fields) throws ConferenceException, IOException {
+        return hedged(CALL_QUERY_CONFERENCES, new Callable<DecodedPage>() {
+            @Override
+            public DecodedPage call() throws Exception {
+                return queryConferencesOnce(handler, query, pageSize, pageToken, fields);
             }
-            if (null == registeredConfKeys) {
-                registeredConfKeys = new ArrayList<String>();
+        });
+    }
+
+    private static DecodedPage queryConferencesOnce(
+            com.appspot.udacity_extras.conference.Conference handler, ConferenceQuery query,
+            int pageSize, String pageToken, String fields) throws IOException {
+        ConferenceQueryForm form = query.toForm();
+        if (pageSize > 0 || null != pageToken) {
+            if (null == form) {
+                form = new ConferenceQueryForm();
             }
-            for (Conference conference : conferences) {
-                DecoratedConference decorated = new DecoratedConference(conference,
-                        registeredConfKeys.contains(conference.getWebsafeKey()));
-                decoratedList.add(decorated);
+            if (pageSize > 0) {
+                form.set("limit", pageSize);
             }
-            return decoratedList;
+            if (null != pageToken) {
+                form.set("pageToken", pageToken);
+            }
+        }
+        com.appspot.udacity_extras.conference.Conference.QueryConferences request =
+                handler.queryConferences(form);
+        if (null != fields) {
+            request.setFields(fields);
+        }
+        HttpResponse response = request.executeUnparsed();
+        try {
+            JsonParser parser = AppConstants.JSON_FACTORY.createJsonParser(
+                    response.getContent(), response.getContentCharset());
+            try {
+                // each attempt of a hedged query decodes with a decoder of its own
+                ConferenceDecoder decoder = new ConferenceDecoder();
+                List<CompactConference> conferences = decoder.decodeCollection(parser);
+                return new DecodedPage(conferences, decoder.getNextPageToken());
+            } finally {
+                parser.close();
+            }
+        } finally {
+            response.disconnect();
         }
-        return null;
     }
 
     /**
-     * Registers user for a {@link com.appspot.udacity_extras.conference.model.Conference}
+     * Returns the full record of a conference, e.g. to show the details of a conference listed
+     * with {@link #LIST_FIELDS}. Records are kept in the details cache, a cached record is
+     * returned without a request. The lookup is read-only, so it is hedged.
+     *
+     * @param websafeKey
+     * @return the conference, or <code>null</code> if the server returned none
+     * @throws ConferenceException
+     */
+    public static CompactConference getConference(String websafeKey)
+            throws ConferenceException, IOException {
+        CompactConference conference = sDetailsCache.get(websafeKey);
+        return null != conference ? conference : fetchConference(websafeKey);
+    }
+
+    /**
+     * Returns the full record of a conference if it is in the details cache, without a request.
+     *
+     * @param websafeKey
+     * @return the conference, or <code>null</code> if it is not cached
+     */
+    public static CompactConference getCachedConference(String websafeKey) {
+        return sDetailsCache.get(websafeKey);
+    }
+
+    /**
+     * Returns the cache of full conference records, e.g. to shrink it under memory pressure.
      *
-     * @param conference
      * @return
+     */
+    public static ConferenceDetailsCache getDetailsCache() {
+        return sDetailsCache;
+    }
+
+    /**
+     * Fetches the full record of a conference from the server and puts it in the details cache,
+     * for callers that already know it is not cached.
+     *
+     * @param websafeKey
+     * @return the conference, or <code>null</code> if the server returned none
      * @throws ConferenceException
+     * @see #getCachedConference(String)
      */
-    public static boolean registerForConference(Conference conference)
+    public static CompactConference fetchConference(final String websafeKey)
             throws ConferenceException, IOException {
-        if (null == sApiServiceHandler) {
-            Log.e(TAG, "registerForConference(): no service handler was built");
-            throw new ConferenceException();
+        final com.appspot.udacity_extras.conference.Conference handler =
+                getServiceHandler("getConference");
+        CompactConference conference = hedged(CALL_GET_CONFERENCE,
+                new Callable<CompactConference>() {
+                    @Override
+                    public CompactConference call() throws Exception {
+                        HttpResponse response = handler.getConference(websafeKey).executeUnparsed();
+                        try {
+                            JsonParser parser = AppConstants.JSON_FACTORY.createJsonParser(
+                                    response.getContent(), response.getContentCharset());
+                            try {
+                                return new ConferenceDecoder().decodeConference(parser);
+                            } finally {
+                                parser.close();
+                            }
+                        } finally {
+                            response.disconnect();
+                        }
+                    }
+                });
+        sDetailsCache.put(conference);
+        return conference;
+    }
+
+    /**
+     * A page of conferences as decoded, before decoration.
+     */
+    private static class DecodedPage {
+
+        final List<CompactConference> conferences;
+        final String nextPageToken;
+
+        DecodedPage(List<CompactConference> conferences, String nextPageToken) {
+            this.conferences = conferences;
+            this.nextPageToken = nextPageToken;
         }
+    }
 
-        com.appspot.udacity_extras.conference.Conference.RegisterForConference
-                registerForConference = sApiServiceHandler.registerForConference(
-                conference.getWebsafeKey());
-        WrappedBoolean result = registerForConference.execute();
-        return result.getResult();
+    /*
+     * Runs a read-only call and, if it has not answered once most calls of the same name would
+     * have, runs it a second time in parallel. The first answer wins and the other attempt is
+     * cancelled, which interrupts it so that the MetricsRequestInitializer does not record it. A
+     * failure is only reported once both attempts have failed. Each call of the request must
+     * build a request of its own.
+     */
+    private static <T> T hedged(String call, Callable<T> request)
+            throws ConferenceException, IOException {
+        CompletionService<T> completion = new ExecutorCompletionService<T>(sExecutor);
+        List<Future<T>> attempts = new ArrayList<Future<T>>(2);
+        attempts.add(completion.submit(request));
+        try {
+            Future<T> done = completion.poll(getHedgeDelay(call), TimeUnit.MILLISECONDS);
+            if (null == done) {
+                Log.d(TAG, "Hedging " + call);
+                attempts.add(completion.submit(request));
+                done = completion.take();
+            }
+            try {
+                return await(done);
+            } catch (IOException e) {
+                if (attempts.size() == 1) {
+                    throw e;
+                }
+                Log.w(TAG, "First attempt of " + call + " failed, waiting for the hedge", e);
+                return await(completion.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the server");
+        } finally {
+            for (Future<T> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    /*
+     * Waits for the 95th latency percentile of a call before hedging it, once enough calls were
+     * measured to trust it.
+     */
+    private static long getHedgeDelay(String call) {
+        MetricsSink sink = sMetricsSink;
+        if (sink instanceof InMemoryMetricsSink) {
+            InMemoryMetricsSink metrics = (InMemoryMetricsSink) sink;
+            if (metrics.getCallCount(call) >= HEDGE_MIN_SAMPLES) {
+                return Math.max(HEDGE_MIN_DELAY_MILLIS,
+                        metrics.getLatencyPercentile(call, HEDGE_PERCENTILE));
+            }
+        }
+        return HEDGE_DEFAULT_DELAY_MILLIS;
     }
 
     /**
-     * Unregisters user from a {@link com.appspot.udacity_extras.conference.model.Conference}.
+     * Waits for a call submitted to the executor and rethrows its failure as the checked
+     * exception the call itself would have thrown.
+     */
+    private static <T> T await(Future<T> future) throws ConferenceException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the server");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ConferenceException) {
+                throw (ConferenceException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Registers user for, or unregisters user from, conferences: a single change in a plain call,
+     * several in a single batched HTTP request. The keys of <code>registrations</code> are websafe conference keys, the values are
+     * <code>true</code> to register and <code>false</code> to unregister. The returned map tells
+     * for each key whether the server applied the change.
      *
-     * @param conference
+     * @param registrations
      * @return
      * @throws ConferenceException
      */
-    public static boolean unregisterFromConference(Conference conference)
+    public static Map<String, Boolean> updateRegistrations(Map<String, Boolean> registrations)
             throws ConferenceException, IOException {
-        if (null == sApiServiceHandler) {
-            Log.e(TAG, "unregisterFromConference(): no service handler was built");
-            throw new ConferenceException();
+        return updateRegistrations(sClients.getCurrentAccount(), registrations);
+    }
+
+    /**
+     * Same as {@link #updateRegistrations(java.util.Map)}, for the given account instead of the
+     * current one. A single change is sent as a plain call; several changes are queued in one
+     * batch, in the iteration order of <code>registrations</code>.
+     *
+     * @param account
+     * @param registrations
+     * @return
+     * @throws ConferenceException
+     */
+    public static Map<String, Boolean> updateRegistrations(String account,
+            Map<String, Boolean> registrations) throws ConferenceException, IOException {
+        com.appspot.udacity_extras.conference.Conference handler =
+                getServiceHandler(account, "updateRegistrations");
+
+        final Map<String, Boolean> results = new HashMap<String, Boolean>();
+        if (registrations.isEmpty()) {
+            return results;
+        }
+        if (registrations.size() == 1) {
+            // a batch would only add its multipart overhead to a single call
+            Map.Entry<String, Boolean> registration = registrations.entrySet().iterator().next();
+            results.put(registration.getKey(),
+                    updateRegistration(handler, registration.getKey(), registration.getValue()));
+            confirmRegistrations(account, registrations, results);
+            return results;
         }
+        BatchRequest batch = handler.batch();
+        batch.setBatchUrl(new GenericUrl(handler.getRootUrl() + "batch"));
+        for (Map.Entry<String, Boolean> registration : registrations.entrySet()) {
+            final String websafeKey = registration.getKey();
+            JsonBatchCallback<WrappedBoolean> callback = new JsonBatchCallback<WrappedBoolean>() {
+                @Override
+                public void onSuccess(WrappedBoolean result, HttpHeaders responseHeaders) {
+                    results.put(websafeKey, Boolean.TRUE.equals(result.getResult()));
+                }
 
-        com.appspot.udacity_extras.conference.Conference.UnregisterFromConference
-                unregisterFromConference = sApiServiceHandler.unregisterFromConference(
-                conference.getWebsafeKey());
-        WrappedBoolean result = unregisterFromConference.execute();
-        return result.getResult();
+                @Override
+                public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                    Log.w(TAG, "Registration update failed for " + websafeKey + ": "
+                            + error.getMessage());
+                    results.put(websafeKey, Boolean.FALSE);
+                }
+            };
+            if (registration.getValue()) {
+                handler.registerForConference(websafeKey).queue(batch, callback);
+            } else {
+                handler.unregisterFromConference(websafeKey).queue(batch, callback);
+            }
+        }
+        batch.execute();
+        confirmRegistrations(account, registrations, results);
+        return results;
+    }
+
+    /*
+     * Sends a single registration change, returning whether the server applied it. A change the
+     * server refuses is reported like a refusal within a batch, other failures are thrown.
+     */
+    private static boolean updateRegistration(
+            com.appspot.udacity_extras.conference.Conference handler, String websafeKey,
+            boolean register) throws IOException {
+        try {
+            WrappedBoolean result = register
+                    ? handler.registerForConference(websafeKey).execute()
+                    : handler.unregisterFromConference(websafeKey).execute();
+            return Boolean.TRUE.equals(result.getResult());
+        } catch (GoogleJsonResponseException e) {
+            Log.w(TAG, "Registration update failed for " + websafeKey + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /*
+     * Records the changes the server applied, see applyConfirmedRegistrations().
+     */
+    private static void confirmRegistrations(String account, Map<String, Boolean> registrations,
+            Map<String, Boolean> results) {
+        long now = SystemClock.elapsedRealtime();
+        for (Map.Entry<String, Boolean> result : results.entrySet()) {
+            if (result.getValue()) {
+                getConfirmedRegistrations(account).put(result.getKey(),
+                        new ConfirmedRegistration(registrations.get(result.getKey()), now));
+            }
+        }
+    }
+
+    private static ConcurrentMap<String, ConfirmedRegistration> getConfirmedRegistrations(
+            String account) {
+        ConcurrentMap<String, ConfirmedRegistration> confirmed =
+                sConfirmedRegistrations.get(account);
+        if (null == confirmed) {
+            confirmed = new ConcurrentHashMap<String, ConfirmedRegistration>();
+            ConcurrentMap<String, ConfirmedRegistration> existing =
+                    sConfirmedRegistrations.putIfAbsent(account, confirmed);
+            if (null != existing) {
+                confirmed = existing;
+            }
+        }
+        return confirmed;
+    }
+
+    /*
+     * Updates the keys of the conferences the user attends, as read from a profile requested at
+     * profileTime, with the changes the server confirmed from then on.
+     */
+    private static void applyConfirmedRegistrations(String account, Set<String> registeredKeys,
+            long profileTime) {
+        for (Map.Entry<String, ConfirmedRegistration> entry
+                : getConfirmedRegistrations(account).entrySet()) {
+            ConfirmedRegistration confirmed = entry.getValue();
+            if (confirmed.time < profileTime) {
+                continue;
+            }
+            if (confirmed.registered) {
+                registeredKeys.add(entry.getKey());
+            } else {
+                registeredKeys.remove(entry.getKey());
+            }
+        }
+    }
+
+    private static class ConfirmedRegistration {
+
+        final boolean registered;
+        final long time;
+
+        ConfirmedRegistration(boolean registered, long time) {
+            this.registered = registered;
+            this.time = time;
+        }
     }
 
     /**
@@ -137,18 +823,25 @@ public class ConferenceUtils {
      * @throws ConferenceException
      */
     public static Profile getProfile() throws ConferenceException, IOException {
-        if (null == sApiServiceHandler) {
-            Log.e(TAG, "getProfile(): no service handler was built");
-            throw new ConferenceException();
-        }
+        return getProfile(getServiceHandler("getProfile"));
+    }
 
-        com.appspot.udacity_extras.conference.Conference.GetProfile getProfile =
-                sApiServiceHandler.getProfile();
-        return getProfile.execute();
+    private static Profile getProfile(
+            final com.appspot.udacity_extras.conference.Conference handler)
+            throws ConferenceException, IOException {
+        return hedged(CALL_GET_PROFILE, new Callable<Profile>() {
+            @Override
+            public Profile call() throws Exception {
+                // a request is not thread-safe, each attempt builds its own
+                return handler.getProfile().execute();
+            }
+        });
     }
 
     /**
-     * Build and returns an instance of {@link com.appspot.udacity_extras.conference.Conference}
+     * Build and returns an instance of {@link com.appspot.udacity_extras.conference.Conference}.
+     * Every call made through it is measured and reported to the current {@link MetricsSink}, and
+     * authorized with the cached token of the account, see {@link TokenManager}.
      *
      * @param context
      * @param email
@@ -156,15 +849,36 @@ public class ConferenceUtils {
      */
     public static com.appspot.udacity_extras.conference.Conference buildServiceHandler(
             Context context, String email) {
-        GoogleAccountCredential credential = GoogleAccountCredential.usingAudience(
-                context, AppConstants.AUDIENCE);
-        credential.setSelectedAccountName(email);
-
         com.appspot.udacity_extras.conference.Conference.Builder builder
                 = new com.appspot.udacity_extras.conference.Conference.Builder(
-                AppConstants.HTTP_TRANSPORT,
-                AppConstants.JSON_FACTORY, credential);
+                getHttpTransport(context, email), AppConstants.JSON_FACTORY,
+                new MetricsRequestInitializer(
+                        new RetryRequestInitializer(getTokenManager(context, email),
+                                "queryConferences"),
+                        sMetricsSink,
+                        com.appspot.udacity_extras.conference.Conference.DEFAULT_SERVICE_PATH));
         builder.setApplicationName("conference-central-server");
         return builder.build();
     }
+
+    /**
+     * Returns the {@link com.udacity.devrel.training.conference.android.utils.CachingHttpTransport}
+     * of an account, that revalidates cached responses instead of downloading them again.
+     *
+     * @param context
+     * @param email
+     * @return
+     */
+    public static CachingHttpTransport getHttpTransport(Context context, String email) {
+        synchronized (sHttpTransports) {
+            CachingHttpTransport transport = sHttpTransports.get(email);
+            if (null == transport) {
+                transport = new CachingHttpTransport(AppConstants.HTTP_TRANSPORT,
+                        new File(context.getCacheDir(), "http"), HTTP_CACHE_SIZE,
+                        HTTP_CACHE_MAX_AGE_MILLIS, email, "queryConferences");
+                sHttpTransports.put(email, transport);
+            }
+            return transport;
+        }
+    }
 }
@@ -15,32 +15,90 @@
 
 package com.udacity.devrel.training.conference.android.utils;
 
-import com.appspot.udacity_extras.conference.model.Conference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 /**
- * A wrapper around the {@link com.appspot.udacity_extras.conference.model.Conference}
+ * A wrapper around the {@link com.udacity.devrel.training.conference.android.utils.CompactConference}
  * to enable adding additional fields and operations.
  */
 public class DecoratedConference {
 
-    private Conference mConference;
+    private CompactConference mConference;
     private boolean mRegistered;
 
-    public DecoratedConference(Conference conference, boolean registered) {
+    /* formatted labels, valid for the label generation they were made in */
+    private volatile Labels mLabels;
+
+    public DecoratedConference(CompactConference conference, boolean registered) {
         mConference = conference;
 
         /* keeps the status of user's attendance to this conference */
         mRegistered = registered;
     }
 
-    public Conference getConference() {
+    public CompactConference getConference() {
         return mConference;
     }
 
-    public void setConference(Conference conference) {
+    public void setConference(CompactConference conference) {
+        if (null == mConference || null == conference
+                || mConference.getStartDate() != conference.getStartDate()
+                || mConference.getEndDate() != conference.getEndDate()
+                || !equal(mConference.getCity(), conference.getCity())) {
+            mLabels = null;
+        }
         mConference = conference;
     }
 
+    /**
+     * Returns the formatted date of the conference, or <code>null</code> if labels have not been
+     * prepared in the given generation.
+     *
+     * @param generation
+     * @return
+     * @see ConferenceLabels
+     */
+    public String getDateLabel(int generation) {
+        Labels labels = mLabels;
+        return null != labels && labels.generation == generation ? labels.date : null;
+    }
+
+    /**
+     * Returns the city and formatted date of the conference, or <code>null</code> if labels have
+     * not been prepared in the given generation.
+     *
+     * @param generation
+     * @return
+     * @see ConferenceLabels
+     */
+    public String getCityAndDateLabel(int generation) {
+        Labels labels = mLabels;
+        return null != labels && labels.generation == generation ? labels.cityAndDate : null;
+    }
+
+    void setLabels(String date, String cityAndDate, int generation) {
+        mLabels = new Labels(date, cityAndDate, generation);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static class Labels {
+
+        final String date;
+        final String cityAndDate;
+        final int generation;
+
+        Labels(String date, String cityAndDate, int generation) {
+            this.date = date;
+            this.cityAndDate = cityAndDate;
+            this.generation = generation;
+        }
+    }
+
     public boolean isRegistered() {
         return mRegistered;
     }
@@ -49,6 +107,100 @@ public class DecoratedConference {
         mRegistered = registered;
     }
 
+    /**
+     * Returns a copy of this conference, with the same conference data, registration status and
+     * labels.
+     *
+     * @return
+     */
+    public DecoratedConference copy() {
+        DecoratedConference copy = new DecoratedConference(mConference, mRegistered);
+        copy.mLabels = mLabels;
+        return copy;
+    }
+
+    /**
+     * Applies a registration change locally, before the server has confirmed it: sets the
+     * registration status and takes a seat or gives it back. Does nothing if the status does not
+     * change.
+     *
+     * @param register
+     */
+    public void applyRegistration(boolean register) {
+        if (mRegistered == register) {
+            return;
+        }
+        mRegistered = register;
+        int seats = mConference.getSeatsAvailable();
+        if (CompactConference.UNKNOWN != seats) {
+            setConference(mConference.withSeatsAvailable(register ? seats - 1 : seats + 1));
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if <code>other</code> describes the same conference with the same
+     * data and registration status. Unlike {@link #equals(Object)}, this takes the registration
+     * status into account.
+     *
+     * @param other
+     * @return
+     */
+    public boolean hasSameContent(DecoratedConference other) {
+        return equals(other) && mRegistered == other.mRegistered;
+    }
+
+    /**
+     * Decorates the conferences returned by the server for a query, dropping the ones that do not
+     * meet the conditions the server cannot evaluate. Returns <code>null</code> if there are no
+     * conferences.
+     *
+     * @param query
+     * @param conferences
+     * @param registeredConfKeys websafe keys of the conferences the user is registered for
+     * @return
+     */
+    public static List<DecoratedConference> decorate(ConferenceQuery query,
+            List<CompactConference> conferences, Set<String> registeredConfKeys) {
+        if (null == conferences || conferences.isEmpty()) {
+            return null;
+        }
+        List<DecoratedConference> decoratedList =
+                new ArrayList<DecoratedConference>(conferences.size());
+        for (CompactConference conference : conferences) {
+            if (!query.matches(conference)) {
+                continue;
+            }
+            DecoratedConference decorated = new DecoratedConference(conference,
+                    registeredConfKeys.contains(conference.getWebsafeKey()));
+            decoratedList.add(decorated);
+        }
+        return decoratedList;
+    }
+
+    /**
+     * Returns <code>true</code> if both lists hold conferences with the same content in the same
+     * order.
+     *
+     * @param first
+     * @param second
+     * @return
+     */
+    public static boolean haveSameContent(List<DecoratedConference> first,
+            List<DecoratedConference> second) {
+        if (first == second) {
+            return true;
+        }
+        if (null == first || null == second || first.size() != second.size()) {
+            return false;
+        }
+        for (int i = 0; i < first.size(); i++) {
+            if (!first.get(i).hasSameContent(second.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,164 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link MetricsSink} that aggregates calls in memory: a latency histogram, byte totals, status
+ * code counts and retry counts per call name. Latencies are kept in fixed buckets, so memory does
+ * not grow with the number of calls.
+ */
+public class InMemoryMetricsSink implements MetricsSink {
+
+    /* upper bounds of the latency buckets, the last bucket holds everything slower */
+    private static final long[] BUCKETS_MILLIS =
+            {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private final ConcurrentMap<String, CallStats> mStats =
+            new ConcurrentHashMap<String, CallStats>();
+
+    @Override
+    public void record(String call, long latencyMillis, int statusCode, int retries,
+            long requestBytes, long responseBytes) {
+        CallStats stats = mStats.get(call);
+        if (null == stats) {
+            CallStats created = new CallStats();
+            stats = mStats.putIfAbsent(call, created);
+            if (null == stats) {
+                stats = created;
+            }
+        }
+        stats.record(latencyMillis, statusCode, retries, requestBytes, responseBytes);
+    }
+
+    /**
+     * Returns an estimate of the given latency percentile of a call, the upper bound of the
+     * bucket holding it, or <code>-1</code> if the call was never recorded. Calls slower than
+     * the last bucket count as the slowest latency seen.
+     *
+     * @param call
+     * @param percentile from <code>0</code> to <code>100</code>
+     * @return
+     */
+    public long getLatencyPercentile(String call, double percentile) {
+        CallStats stats = mStats.get(call);
+        return null == stats ? -1 : stats.getLatencyPercentile(percentile);
+    }
+
+    /**
+     * Returns the number of times a call was recorded.
+     *
+     * @param call
+     * @return
+     */
+    public long getCallCount(String call) {
+        CallStats stats = mStats.get(call);
+        return null == stats ? 0 : stats.getCount();
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void clear() {
+        mStats.clear();
+    }
+
+    /**
+     * Returns a human readable report of everything recorded so far, one call per line.
+     *
+     * @return
+     */
+    public String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, CallStats> entry
+                : new TreeMap<String, CallStats>(mStats).entrySet()) {
+            sb.append(entry.getKey()).append(": ");
+            entry.getValue().appendTo(sb);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static class CallStats {
+
+        private final long[] mBuckets = new long[BUCKETS_MILLIS.length + 1];
+        private final Map<Integer, Integer> mStatusCodes = new TreeMap<Integer, Integer>();
+        private long mCount;
+        private long mLatencySum;
+        private long mLatencyMax;
+        private long mRetries;
+        private long mRequestBytes;
+        private long mResponseBytes;
+        private long mResponseCount;
+
+        synchronized void record(long latencyMillis, int statusCode, int retries,
+                long requestBytes, long responseBytes) {
+            int bucket = 0;
+            while (bucket < BUCKETS_MILLIS.length && latencyMillis > BUCKETS_MILLIS[bucket]) {
+                bucket++;
+            }
+            mBuckets[bucket]++;
+            mCount++;
+            mLatencySum += latencyMillis;
+            mLatencyMax = Math.max(mLatencyMax, latencyMillis);
+            mRetries += retries;
+            Integer count = mStatusCodes.get(statusCode);
+            mStatusCodes.put(statusCode, null == count ? 1 : count + 1);
+            if (UNKNOWN_SIZE != requestBytes) {
+                mRequestBytes += requestBytes;
+            }
+            if (UNKNOWN_SIZE != responseBytes) {
+                mResponseBytes += responseBytes;
+                mResponseCount++;
+            }
+        }
+
+        synchronized long getCount() {
+            return mCount;
+        }
+
+        synchronized long getLatencyPercentile(double percentile) {
+            long rank = (long) Math.ceil(mCount * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return Math.min(BUCKETS_MILLIS[i], mLatencyMax);
+                }
+            }
+            return mLatencyMax;
+        }
+
+        synchronized void appendTo(StringBuilder sb) {
+            sb.append("calls=").append(mCount)
+                    .append(" retries=").append(mRetries)
+                    .append(" meanMs=").append(mCount == 0 ? 0 : mLatencySum / mCount)
+                    .append(" p50Ms=").append(getLatencyPercentile(50))
+                    .append(" p90Ms=").append(getLatencyPercentile(90))
+                    .append(" p99Ms=").append(getLatencyPercentile(99))
+                    .append(" maxMs=").append(mLatencyMax)
+                    .append(" requestBytes=").append(mRequestBytes)
+                    .append(" responseBytes=").append(mResponseBytes)
+                    .append(" meanResponseBytes=")
+                    .append(mResponseCount == 0 ? 0 : mResponseBytes / mResponseCount)
+                    .append(" status=").append(mStatusCodes);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpIOExceptionHandler;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseInterceptor;
+
+import java.io.IOException;
+
+/**
+ * An {@link com.google.api.client.http.HttpRequestInitializer} that measures every request of a
+ * client and reports it to a {@link MetricsSink}, on top of the initializer it wraps (usually the
+ * credential). It is installed through the client builder, so every call of the client is
+ * measured without changing the calls themselves.
+ * <p>
+ * Latency runs from the first attempt until the final response has been received, or until the
+ * request failed. Retries are the attempts made by the request itself, e.g. after the credential
+ * refreshed an expired token. A request that completes on an interrupted thread is not recorded:
+ * it is a hedged attempt cancelled because the other one answered first, and its latency would
+ * only tell how long it was left running.
+ */
+public class MetricsRequestInitializer implements HttpRequestInitializer {
+
+    /* path segments at least this long are taken for keys and left out of call names */
+    private static final int MIN_KEY_LENGTH = 20;
+
+    private final HttpRequestInitializer mDelegate;
+    private final MetricsSink mSink;
+    private final String mServicePath;
+
+    /**
+     * @param delegate initializer to run first, may be <code>null</code>
+     * @param sink
+     * @param servicePath service path of the API, stripped from call names
+     */
+    public MetricsRequestInitializer(HttpRequestInitializer delegate, MetricsSink sink,
+            String servicePath) {
+        mDelegate = delegate;
+        mSink = sink;
+        mServicePath = servicePath;
+    }
+
+    @Override
+    public void initialize(HttpRequest request) throws IOException {
+        if (null != mDelegate) {
+            mDelegate.initialize(request);
+        }
+        Recorder recorder = new Recorder(request.getInterceptor(), request.getIOExceptionHandler());
+        request.setInterceptor(recorder);
+        request.setResponseInterceptor(recorder);
+        request.setIOExceptionHandler(recorder);
+    }
+
+    /**
+     * Returns the name a request is recorded under, e.g. <code>GET conference/*</code>.
+     *
+     * @param request
+     * @return
+     */
+    String getCallName(HttpRequest request) {
+        String path = request.getUrl().getRawPath();
+        if (null == path) {
+            path = "";
+        }
+        int start = path.indexOf(mServicePath);
+        if (start >= 0) {
+            path = path.substring(start + mServicePath.length());
+        }
+        StringBuilder name = new StringBuilder(request.getRequestMethod()).append(' ');
+        String[] segments = path.split("/");
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                name.append('/');
+            }
+            name.append(segments[i].length() >= MIN_KEY_LENGTH ? "*" : segments[i]);
+        }
+        return name.toString();
+    }
+
+    /**
+     * Measures a single request, across all of its attempts.
+     */
+    private class Recorder implements HttpExecuteInterceptor, HttpResponseInterceptor,
+            HttpIOExceptionHandler {
+
+        private final HttpExecuteInterceptor mInterceptor;
+        private final HttpIOExceptionHandler mIOExceptionHandler;
+        private long mStart;
+        private int mAttempts;
+        private long mRequestBytes = MetricsSink.UNKNOWN_SIZE;
+        private HttpRequest mRequest;
+
+        Recorder(HttpExecuteInterceptor interceptor, HttpIOExceptionHandler ioExceptionHandler) {
+            mInterceptor = interceptor;
+            mIOExceptionHandler = ioExceptionHandler;
+        }
+
+        @Override
+        public void intercept(HttpRequest request) throws IOException {
+            if (mAttempts++ == 0) {
+                mStart = System.nanoTime();
+                mRequest = request;
+            }
+            if (null != mInterceptor) {
+                mInterceptor.intercept(request);
+            }
+            HttpContent content = request.getContent();
+            mRequestBytes = null == content ? 0 : content.getLength();
+        }
+
+        @Override
+        public void interceptResponse(HttpResponse response) throws IOException {
+            Long length = response.getHeaders().getContentLength();
+            record(response.getStatusCode(),
+                    null == length ? MetricsSink.UNKNOWN_SIZE : length);
+        }
+
+        @Override
+        public boolean handleIOException(HttpRequest request, boolean supportsRetry)
+                throws IOException {
+            boolean retry = null != mIOExceptionHandler
+                    && mIOExceptionHandler.handleIOException(request, supportsRetry);
+            if (!retry) {
+                record(MetricsSink.NO_STATUS, MetricsSink.UNKNOWN_SIZE);
+            }
+            return retry;
+        }
+
+        private void record(int statusCode, long responseBytes) {
+            if (null == mRequest || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            long latency = (System.nanoTime() - mStart) / 1000000;
+            mSink.record(getCallName(mRequest), latency, statusCode, mAttempts - 1,
+                    mRequestBytes, responseBytes);
+        }
+    }
+}
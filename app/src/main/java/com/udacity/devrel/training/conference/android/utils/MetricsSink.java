@@ -0,0 +1,50 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+/**
+ * Receives the measurements of calls made to the Endpoints API. Calls are named after the HTTP
+ * method and the path of the API method, e.g. <code>POST queryConferences</code>, with websafe
+ * keys replaced by <code>*</code>. Implementations are called from the threads making the calls
+ * and must be thread-safe.
+ *
+ * @see MetricsRequestInitializer
+ */
+public interface MetricsSink {
+
+    /**
+     * Status code recorded for calls that failed without a response.
+     */
+    int NO_STATUS = 0;
+
+    /**
+     * Size recorded when the size of a payload is not known.
+     */
+    long UNKNOWN_SIZE = -1;
+
+    /**
+     * Records a completed call.
+     *
+     * @param call name of the call
+     * @param latencyMillis time from the first attempt to the final response or failure
+     * @param statusCode HTTP status of the final response, or {@link #NO_STATUS}
+     * @param retries number of attempts made after the first one
+     * @param requestBytes size of the request body, or {@link #UNKNOWN_SIZE}
+     * @param responseBytes size of the decoded response body, or {@link #UNKNOWN_SIZE}
+     */
+    void record(String call, long latencyMillis, int statusCode, int retries, long requestBytes,
+            long responseBytes);
+}
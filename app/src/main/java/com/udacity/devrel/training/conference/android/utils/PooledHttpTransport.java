@@ -0,0 +1,509 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import com.google.api.client.http.GZipEncoding;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.util.StreamingContent;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.LayeredSocketFactory;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link com.google.api.client.http.HttpTransport} that keeps a bounded pool of keep-alive
+ * connections, so back-to-back calls to the same host reuse a connection instead of paying for a
+ * new TCP and TLS handshake. Responses are requested gzip-encoded and decoded by the client
+ * library, and request bodies that are not encoded yet are gzipped.
+ * <p>
+ * It counts requests and the connections it had to open, see {@link #getRequestCount()} and
+ * {@link #getConnectionCount()}. Instances are created with a {@link PooledHttpTransport.Builder}.
+ */
+public class PooledHttpTransport extends HttpTransport {
+
+    /* request bodies shorter than this are sent as they are, gzip would not make them smaller */
+    private static final int MIN_GZIP_LENGTH = 1024;
+
+    private final ThreadSafeClientConnManager mConnectionManager;
+    private final DefaultHttpClient mClient;
+    private final boolean mGzip;
+
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mConnectionCount = new AtomicLong();
+
+    private PooledHttpTransport(Builder builder) {
+        mGzip = builder.mGzip;
+
+        HttpParams params = new BasicHttpParams();
+        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+        HttpConnectionParams.setConnectionTimeout(params, builder.mConnectTimeout);
+        HttpConnectionParams.setSoTimeout(params, builder.mReadTimeout);
+        HttpConnectionParams.setSocketBufferSize(params, 8192);
+        // the client library follows redirects itself
+        HttpClientParams.setRedirecting(params, false);
+        ConnManagerParams.setMaxTotalConnections(params, builder.mMaxConnections);
+        ConnManagerParams.setMaxConnectionsPerRoute(params,
+                new ConnPerRouteBean(builder.mMaxConnectionsPerRoute));
+        // how long to wait for a pooled connection to be released
+        ConnManagerParams.setTimeout(params, builder.mConnectTimeout);
+
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http",
+                new CountingSocketFactory(PlainSocketFactory.getSocketFactory()), 80));
+        registry.register(new Scheme("https",
+                new CountingLayeredSocketFactory(SSLSocketFactory.getSocketFactory()), 443));
+        mConnectionManager = new ThreadSafeClientConnManager(params, registry);
+
+        mClient = new DefaultHttpClient(mConnectionManager, params);
+        // a pooled connection the server has closed fails before the request is sent, it is
+        // safe to retry once on a new one; other failures are left to the request initializers
+        mClient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(1, false));
+        final long keepAliveMillis = builder.mKeepAliveMillis;
+        mClient.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+
+            private final ConnectionKeepAliveStrategy mDefault =
+                    new DefaultConnectionKeepAliveStrategy();
+
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = mDefault.getKeepAliveDuration(response, context);
+                return duration > 0 ? Math.min(duration, keepAliveMillis) : keepAliveMillis;
+            }
+        });
+        if (mGzip) {
+            mClient.addRequestInterceptor(new HttpRequestInterceptor() {
+                @Override
+                public void process(HttpRequest request, HttpContext context)
+                        throws HttpException, IOException {
+                    if (!request.containsHeader("Accept-Encoding")) {
+                        request.addHeader("Accept-Encoding", "gzip");
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public boolean supportsMethod(String method) {
+        return true;
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url) {
+        // connections past their keep-alive are closed rather than handed out
+        mConnectionManager.closeExpiredConnections();
+        return new PooledRequest(method, url);
+    }
+
+    @Override
+    public void shutdown() {
+        mConnectionManager.shutdown();
+    }
+
+    /**
+     * Returns the number of requests sent since the transport was created.
+     *
+     * @return
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Returns the number of connections opened since the transport was created. All other
+     * requests were sent on a pooled connection.
+     *
+     * @return
+     */
+    public long getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    /**
+     * Returns the number of idle and leased connections currently in the pool.
+     *
+     * @return
+     */
+    public int getPooledConnectionCount() {
+        return mConnectionManager.getConnectionsInPool();
+    }
+
+    @Override
+    public String toString() {
+        long requests = getRequestCount();
+        long connections = getConnectionCount();
+        return "PooledHttpTransport: " + requests + " requests on " + connections
+                + " connections (" + (requests == 0 ? 0 : 100 * (requests - connections) / requests)
+                + "% reused), " + getPooledConnectionCount() + " pooled";
+    }
+
+    private class PooledRequest extends LowLevelHttpRequest {
+
+        private final MethodRequest mRequest;
+
+        PooledRequest(String method, String url) {
+            mRequest = new MethodRequest(method, url);
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            mRequest.addHeader(name, value);
+        }
+
+        @Override
+        public void setTimeout(int connectTimeout, int readTimeout) {
+            HttpParams params = mRequest.getParams();
+            ConnManagerParams.setTimeout(params, connectTimeout);
+            HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+            HttpConnectionParams.setSoTimeout(params, readTimeout);
+        }
+
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+            StreamingContent content = getStreamingContent();
+            if (null != content) {
+                // a wrapping transport may have passed the encoding on as a header
+                boolean encoded = null != getContentEncoding()
+                        || mRequest.containsHeader("Content-Encoding");
+                StreamingEntity entity;
+                if (mGzip && !encoded
+                        && (getContentLength() < 0 || getContentLength() >= MIN_GZIP_LENGTH)) {
+                    entity = new StreamingEntity(new GzipContent(content), -1);
+                    entity.setContentEncoding("gzip");
+                } else {
+                    entity = new StreamingEntity(content, getContentLength());
+                    entity.setContentEncoding(getContentEncoding());
+                }
+                entity.setContentType(getContentType());
+                mRequest.setEntity(entity);
+            }
+            mRequestCount.incrementAndGet();
+            return new PooledResponse(mRequest, mClient.execute(mRequest));
+        }
+    }
+
+    private static class MethodRequest extends HttpEntityEnclosingRequestBase {
+
+        private final String mMethod;
+
+        MethodRequest(String method, String url) {
+            mMethod = method;
+            setURI(URI.create(url));
+        }
+
+        @Override
+        public String getMethod() {
+            return mMethod;
+        }
+    }
+
+    /*
+     * Streams the content of a request to the connection. The content is written once, straight
+     * from the StreamingContent, so the entity is not repeatable. getContent() is only used by
+     * code that reads entities instead of writing them, e.g. to log them; it writes the content
+     * to memory, and content that can only be written once is then gone.
+     */
+    private static class StreamingEntity extends AbstractHttpEntity {
+
+        private final StreamingContent mContent;
+        private final long mLength;
+
+        StreamingEntity(StreamingContent content, long length) {
+            mContent = content;
+            mLength = length;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mLength;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            // the length is only a hint for the buffer, bodies are small
+            int size = mLength > 0 && mLength < 1 << 20 ? (int) mLength : 512;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+            writeTo(out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            mContent.writeTo(out);
+            out.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    private static class GzipContent implements StreamingContent {
+
+        private final StreamingContent mContent;
+
+        GzipContent(StreamingContent content) {
+            mContent = content;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            new GZipEncoding().encode(mContent, out);
+        }
+    }
+
+    private static class PooledResponse extends LowLevelHttpResponse {
+
+        private final MethodRequest mRequest;
+        private final HttpResponse mResponse;
+        private final Header[] mHeaders;
+
+        PooledResponse(MethodRequest request, HttpResponse response) {
+            mRequest = request;
+            mResponse = response;
+            mHeaders = response.getAllHeaders();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            HttpEntity entity = mResponse.getEntity();
+            return null == entity ? null : entity.getContent();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            HttpEntity entity = mResponse.getEntity();
+            Header header = null == entity ? null : entity.getContentEncoding();
+            return null == header ? null : header.getValue();
+        }
+
+        @Override
+        public long getContentLength() {
+            HttpEntity entity = mResponse.getEntity();
+            return null == entity ? -1 : entity.getContentLength();
+        }
+
+        @Override
+        public String getContentType() {
+            HttpEntity entity = mResponse.getEntity();
+            Header header = null == entity ? null : entity.getContentType();
+            return null == header ? null : header.getValue();
+        }
+
+        @Override
+        public String getStatusLine() {
+            return mResponse.getStatusLine().toString();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return mResponse.getStatusLine().getStatusCode();
+        }
+
+        @Override
+        public String getReasonPhrase() {
+            return mResponse.getStatusLine().getReasonPhrase();
+        }
+
+        @Override
+        public int getHeaderCount() {
+            return mHeaders.length;
+        }
+
+        @Override
+        public String getHeaderName(int index) {
+            return mHeaders[index].getName();
+        }
+
+        @Override
+        public String getHeaderValue(int index) {
+            return mHeaders[index].getValue();
+        }
+
+        /*
+         * Reads what is left of the content so that the connection goes back to the pool, and
+         * only drops the connection if that fails.
+         */
+        @Override
+        public void disconnect() {
+            HttpEntity entity = mResponse.getEntity();
+            try {
+                if (null != entity) {
+                    entity.consumeContent();
+                }
+            } catch (IOException e) {
+                mRequest.abort();
+            }
+        }
+    }
+
+    /*
+     * Counts the connections opened through a socket factory.
+     */
+    private class CountingSocketFactory implements SocketFactory {
+
+        private final SocketFactory mDelegate;
+
+        CountingSocketFactory(SocketFactory delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return mDelegate.createSocket();
+        }
+
+        @Override
+        public Socket connectSocket(Socket socket, String host, int port,
+                InetAddress localAddress, int localPort, HttpParams params)
+                throws IOException, UnknownHostException {
+            mConnectionCount.incrementAndGet();
+            return mDelegate.connectSocket(socket, host, port, localAddress, localPort, params);
+        }
+
+        @Override
+        public boolean isSecure(Socket socket) {
+            return mDelegate.isSecure(socket);
+        }
+    }
+
+    private class CountingLayeredSocketFactory extends CountingSocketFactory
+            implements LayeredSocketFactory {
+
+        private final LayeredSocketFactory mLayeredDelegate;
+
+        CountingLayeredSocketFactory(LayeredSocketFactory delegate) {
+            super(delegate);
+            mLayeredDelegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+                throws IOException, UnknownHostException {
+            return mLayeredDelegate.createSocket(socket, host, port, autoClose);
+        }
+    }
+
+    /**
+     * Builds a {@link PooledHttpTransport}.
+     */
+    public static class Builder {
+
+        private int mMaxConnections = 8;
+        private int mMaxConnectionsPerRoute = 4;
+        private int mConnectTimeout = 10 * 1000;
+        private int mReadTimeout = 15 * 1000;
+        private long mKeepAliveMillis = 30 * 1000;
+        private boolean mGzip = true;
+
+        /**
+         * @param maxConnections maximum number of connections, to all hosts
+         * @param maxConnectionsPerRoute maximum number of connections to a single host
+         */
+        public Builder maxConnections(int maxConnections, int maxConnectionsPerRoute) {
+            if (maxConnectionsPerRoute < 1 || maxConnections < maxConnectionsPerRoute) {
+                throw new IllegalArgumentException("invalid pool size: " + maxConnections
+                        + " connections, " + maxConnectionsPerRoute + " per host");
+            }
+            mMaxConnections = maxConnections;
+            mMaxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * Sets the default timeouts, requests may set their own.
+         *
+         * @param connectTimeout in milliseconds, <code>0</code> for none
+         * @param readTimeout in milliseconds, <code>0</code> for none
+         */
+        public Builder timeouts(int connectTimeout, int readTimeout) {
+            if (connectTimeout < 0 || readTimeout < 0) {
+                throw new IllegalArgumentException("timeouts must not be negative");
+            }
+            mConnectTimeout = connectTimeout;
+            mReadTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * Sets how long an idle connection is kept, unless the server asks for less.
+         */
+        public Builder keepAlive(long duration, TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("keep-alive must be positive: " + duration);
+            }
+            mKeepAliveMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Sends requests and asks for responses without gzip encoding.
+         */
+        public Builder disableGzip() {
+            mGzip = false;
+            return this;
+        }
+
+        public PooledHttpTransport build() {
+            return new PooledHttpTransport(this);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.udacity.devrel.training.conference.android.RegistrationReplayReceiver;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A durable write-ahead queue of registration changes, kept per account in its
+ * {@link com.udacity.devrel.training.conference.android.utils.ConferenceStore}. A change is
+ * written to the queue and applied to the store before it is sent, so it is not lost if the
+ * server cannot be reached, and is sent again by
+ * {@link com.udacity.devrel.training.conference.android.RegistrationReplayReceiver} when
+ * connectivity returns. Repeated changes to a conference are coalesced into the last one, and
+ * flushing sends only the changes left, in the order they were first made, in a single batch.
+ */
+public class RegistrationQueue {
+
+    private static final String TAG = "RegistrationQueue";
+
+    /* serializes changes and flushes, so a change made while a flush runs is not coalesced with
+       a change the server is applying */
+    private static final Object sLock = new Object();
+
+    private RegistrationQueue() {
+    }
+
+    /**
+     * Queues a registration change of a conference and stores it locally. Blocks, call it off the
+     * UI thread.
+     *
+     * @param context
+     * @param account
+     * @param decorated the conference, with the change already applied
+     * @param wasRegistered registration status before the change
+     */
+    public static void enqueue(Context context, String account, DecoratedConference decorated,
+            boolean wasRegistered) {
+        synchronized (sLock) {
+            ConferenceStore.getInstance(context, account)
+                    .enqueueRegistration(decorated, wasRegistered);
+        }
+        RegistrationReplayReceiver.setEnabled(context, true);
+    }
+
+    /**
+     * Sends the queued registration changes of an account to the server. Changes the server
+     * answered leave the queue, and those it refused are reverted in the store. If the server
+     * cannot be reached, the queue is kept and sent again when connectivity returns. Blocks, call
+     * it off the UI thread.
+     *
+     * @param context
+     * @param account
+     * @return for each change sent, whether the server applied it
+     * @throws ConferenceException if no service handler was built for the account
+     * @throws IOException if the server could not be reached
+     */
+    public static Map<String, Boolean> flush(Context context, String account)
+            throws ConferenceException, IOException {
+        ConferenceStore store = ConferenceStore.getInstance(context, account);
+        synchronized (sLock) {
+            Map<String, Boolean> pending = store.getPendingRegistrations();
+            if (pending.isEmpty()) {
+                RegistrationReplayReceiver.setEnabled(context, false);
+                return pending;
+            }
+            Log.d(TAG, "Sending " + pending.size() + " queued registration changes");
+            Map<String, Boolean> results = ConferenceUtils.updateRegistrations(account, pending);
+            for (Map.Entry<String, Boolean> change : pending.entrySet()) {
+                Boolean applied = results.get(change.getKey());
+                if (null != applied) {
+                    store.completeRegistration(change.getKey(), change.getValue(), applied);
+                }
+            }
+            RegistrationReplayReceiver.setEnabled(context,
+                    !store.getPendingRegistrations().isEmpty());
+            return results;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import com.google.api.client.http.HttpBackOffIOExceptionHandler;
+import com.google.api.client.http.HttpBackOffUnsuccessfulResponseHandler;
+import com.google.api.client.http.HttpIOExceptionHandler;
+import com.google.api.client.http.HttpMethods;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.util.ExponentialBackOff;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An {@link com.google.api.client.http.HttpRequestInitializer} that bounds every request with
+ * timeouts and retries read-only requests that fail on a flaky connection. Retries wait with a
+ * jittered exponential backoff, and stop once the request has been retried for longer than its
+ * deadline. Requests that change server state are never retried, since the server may have
+ * applied them before the failure.
+ * <p>
+ * The unsuccessful response handler of the wrapped initializer, usually the credential refreshing
+ * an expired token, keeps precedence over the backoff.
+ */
+public class RetryRequestInitializer implements HttpRequestInitializer {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int MAX_RETRIES = 3;
+
+    /* backoff: 500ms, then 1.5 times longer each time, +/- 50% jitter, for at most 20s */
+    private static final int INITIAL_INTERVAL_MILLIS = 500;
+    private static final double MULTIPLIER = 1.5;
+    private static final double RANDOMIZATION_FACTOR = 0.5;
+    private static final int MAX_INTERVAL_MILLIS = 5 * 1000;
+    private static final int MAX_ELAPSED_TIME_MILLIS = 20 * 1000;
+
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+    private final HttpRequestInitializer mDelegate;
+    private final Set<String> mReadOnlyPostMethods;
+
+    /**
+     * @param delegate initializer to run first, may be <code>null</code>
+     * @param readOnlyPostMethods last path segments of <code>POST</code> requests that are
+     * read-only and may be retried
+     */
+    public RetryRequestInitializer(HttpRequestInitializer delegate,
+            String... readOnlyPostMethods) {
+        mDelegate = delegate;
+        mReadOnlyPostMethods = new HashSet<String>(Arrays.asList(readOnlyPostMethods));
+    }
+
+    @Override
+    public void initialize(HttpRequest request) throws IOException {
+        if (null != mDelegate) {
+            mDelegate.initialize(request);
+        }
+        request.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        request.setReadTimeout(READ_TIMEOUT_MILLIS);
+        request.setNumberOfRetries(MAX_RETRIES);
+
+        // one backoff per request, shared by both kinds of failures
+        ExponentialBackOff backOff = new ExponentialBackOff.Builder()
+                .setInitialIntervalMillis(INITIAL_INTERVAL_MILLIS)
+                .setMultiplier(MULTIPLIER)
+                .setRandomizationFactor(RANDOMIZATION_FACTOR)
+                .setMaxIntervalMillis(MAX_INTERVAL_MILLIS)
+                .setMaxElapsedTimeMillis(MAX_ELAPSED_TIME_MILLIS)
+                .build();
+        final HttpUnsuccessfulResponseHandler delegateHandler =
+                request.getUnsuccessfulResponseHandler();
+        final HttpUnsuccessfulResponseHandler backOffHandler =
+                new HttpBackOffUnsuccessfulResponseHandler(backOff).setBackOffRequired(
+                        new HttpBackOffUnsuccessfulResponseHandler.BackOffRequired() {
+                            @Override
+                            public boolean isRequired(HttpResponse response) {
+                                int status = response.getStatusCode();
+                                return status / 100 == 5 || status == STATUS_TOO_MANY_REQUESTS;
+                            }
+                        });
+        request.setUnsuccessfulResponseHandler(new HttpUnsuccessfulResponseHandler() {
+            @Override
+            public boolean handleResponse(HttpRequest request, HttpResponse response,
+                    boolean supportsRetry) throws IOException {
+                if (null != delegateHandler
+                        && delegateHandler.handleResponse(request, response, supportsRetry)) {
+                    return true;
+                }
+                return isReadOnly(request)
+                        && backOffHandler.handleResponse(request, response, supportsRetry);
+            }
+        });
+
+        final HttpIOExceptionHandler delegateIOHandler = request.getIOExceptionHandler();
+        final HttpIOExceptionHandler backOffIOHandler = new HttpBackOffIOExceptionHandler(backOff);
+        request.setIOExceptionHandler(new HttpIOExceptionHandler() {
+            @Override
+            public boolean handleIOException(HttpRequest request, boolean supportsRetry)
+                    throws IOException {
+                if (null != delegateIOHandler
+                        && delegateIOHandler.handleIOException(request, supportsRetry)) {
+                    return true;
+                }
+                return isReadOnly(request)
+                        && backOffIOHandler.handleIOException(request, supportsRetry);
+            }
+        });
+    }
+
+    private boolean isReadOnly(HttpRequest request) {
+        String method = request.getRequestMethod();
+        if (HttpMethods.GET.equals(method) || HttpMethods.HEAD.equals(method)) {
+            return true;
+        }
+        if (HttpMethods.POST.equals(method)) {
+            String path = request.getUrl().getRawPath();
+            String lastSegment = null == path ? "" : path.substring(path.lastIndexOf('/') + 1);
+            return mReadOnlyPostMethods.contains(lastSegment);
+        }
+        return false;
+    }
+}
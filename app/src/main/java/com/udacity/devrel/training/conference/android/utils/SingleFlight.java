@@ -0,0 +1,69 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces concurrent calls for the same key: while a call is in flight, other callers asking
+ * for the same key wait for it and share its result or failure instead of making the call again.
+ * Once the call completes, the next caller starts a new one, so results are never cached.
+ *
+ * @param <K> the key identifying equivalent calls, must implement <code>equals</code> and
+ * <code>hashCode</code>
+ * @param <V> the result of the calls
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> mInFlight =
+            new ConcurrentHashMap<K, FutureTask<V>>();
+
+    /**
+     * Runs <code>call</code> on the current thread, unless a call for the same key is already in
+     * flight. Returns the future of whichever call serves this caller. It is already done when
+     * this thread ran the call, otherwise wait for it with {@link java.util.concurrent.Future#get()}.
+     *
+     * @param key
+     * @param call
+     * @return
+     */
+    public Future<V> execute(K key, Callable<V> call) {
+        FutureTask<V> task = new FutureTask<V>(call);
+        FutureTask<V> inFlight = mInFlight.putIfAbsent(key, task);
+        if (null != inFlight) {
+            return inFlight;
+        }
+        try {
+            task.run();
+        } finally {
+            mInFlight.remove(key, task);
+        }
+        return task;
+    }
+
+    /**
+     * Returns the number of keys with a call in flight.
+     *
+     * @return
+     */
+    public int getInFlightCount() {
+        return mInFlight.size();
+    }
+}
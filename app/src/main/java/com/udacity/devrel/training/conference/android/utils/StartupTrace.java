@@ -0,0 +1,146 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records when the phases of a cold start begin and end, relative to the start of the trace,
+ * along with milestones such as the first list shown. Phases may run on any thread and overlap.
+ * Nothing is recorded outside of a trace, so the same code paths can report phases
+ * unconditionally and only the cold start is traced.
+ */
+public class StartupTrace {
+
+    /* phases of a cold start */
+    public static final String CLIENT = "client";
+    public static final String PLAY_SERVICES = "playServices";
+    public static final String TOKEN = "token";
+    public static final String STORE = "store";
+    public static final String FIRST_PAGE = "firstPage";
+
+    /* milestones of a cold start: a list is shown, and the list from the server is shown */
+    public static final String FIRST_LIST = "firstList";
+    public static final String FRESH_LIST = "freshList";
+
+    private static final StartupTrace sInstance = new StartupTrace();
+
+    private long mOriginNanos;
+    private boolean mActive;
+    private final Map<String, long[]> mPhases = new LinkedHashMap<String, long[]>();
+    private final Map<String, Long> mMilestones = new LinkedHashMap<String, Long>();
+
+    /**
+     * Returns the trace of the application.
+     *
+     * @return
+     */
+    public static StartupTrace get() {
+        return sInstance;
+    }
+
+    /**
+     * Starts a new trace, dropping anything recorded before.
+     */
+    public synchronized void start() {
+        mOriginNanos = System.nanoTime();
+        mActive = true;
+        mPhases.clear();
+        mMilestones.clear();
+    }
+
+    public synchronized boolean isActive() {
+        return mActive;
+    }
+
+    /**
+     * Records the beginning of a phase. Only the first beginning of a phase is kept.
+     *
+     * @param phase
+     */
+    public synchronized void begin(String phase) {
+        if (mActive && !mPhases.containsKey(phase)) {
+            mPhases.put(phase, new long[]{elapsedMillis(), -1});
+        }
+    }
+
+    /**
+     * Records the end of a phase that has begun.
+     *
+     * @param phase
+     */
+    public synchronized void end(String phase) {
+        long[] phaseTimes = mActive ? mPhases.get(phase) : null;
+        if (null != phaseTimes && phaseTimes[1] < 0) {
+            phaseTimes[1] = elapsedMillis();
+        }
+    }
+
+    /**
+     * Records a milestone. Only the first occurrence of a milestone is kept.
+     *
+     * @param milestone
+     */
+    public synchronized void mark(String milestone) {
+        if (mActive && !mMilestones.containsKey(milestone)) {
+            mMilestones.put(milestone, elapsedMillis());
+        }
+    }
+
+    /**
+     * Returns the time from the start of the trace to a milestone, in milliseconds, or
+     * <code>-1</code> if it was not reached.
+     *
+     * @param milestone
+     * @return
+     */
+    public synchronized long getMilestone(String milestone) {
+        Long millis = mMilestones.get(milestone);
+        return null == millis ? -1 : millis;
+    }
+
+    /**
+     * Ends the trace and returns its summary, one line per phase and milestone, or
+     * <code>null</code> if no trace was running.
+     *
+     * @return
+     */
+    public synchronized String finish() {
+        if (!mActive) {
+            return null;
+        }
+        mActive = false;
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, long[]> phase : mPhases.entrySet()) {
+            long[] phaseTimes = phase.getValue();
+            String line = phaseTimes[1] < 0
+                    ? String.format("%-12s %6d ms ... (not ended)", phase.getKey(), phaseTimes[0])
+                    : String.format("%-12s %6d ms .. %6d ms (%d ms)", phase.getKey(),
+                            phaseTimes[0], phaseTimes[1], phaseTimes[1] - phaseTimes[0]);
+            summary.append(line).append('\n');
+        }
+        for (Map.Entry<String, Long> milestone : mMilestones.entrySet()) {
+            summary.append(String.format("%-12s %6d ms", milestone.getKey(),
+                    milestone.getValue())).append('\n');
+        }
+        return summary.toString();
+    }
+
+    private long elapsedMillis() {
+        return (System.nanoTime() - mOriginNanos) / 1000000;
+    }
+}
@@ -0,0 +1,269 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+/**
+ * Decides when the background sync runs. A sync is due once the interval has passed since the
+ * last successful one, or right away if there never was one. After a failure, the next attempt
+ * waits for a backoff that doubles with each consecutive failure, up to a maximum. A due sync
+ * only runs when the device meets the constraints, e.g. unmetered network and charging, and is
+ * otherwise checked again after a while.
+ * <p>
+ * The scheduler only reads the time from its {@link SyncScheduler.Clock}, so its decisions can
+ * be checked with a fake clock. Its state is exposed so that it can be kept across processes,
+ * see {@link #restore(long, long, int)}. Instances are created with a
+ * {@link SyncScheduler.Builder} and are not thread-safe.
+ */
+public class SyncScheduler {
+
+    /* consecutive failures beyond this do not lengthen the backoff, and do not overflow it */
+    private static final int MAX_BACKOFF_DOUBLINGS = 30;
+
+    /**
+     * Source of the current time, in milliseconds since the epoch.
+     */
+    public interface Clock {
+
+        long currentTimeMillis();
+    }
+
+    /**
+     * Reads the time of the system.
+     */
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final Clock mClock;
+    private final long mIntervalMillis;
+    private final long mInitialBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final long mConstraintRetryMillis;
+    private final boolean mRequireUnmetered;
+    private final boolean mRequireCharging;
+
+    private long mLastSuccess;
+    private long mLastAttempt;
+    private int mFailureCount;
+
+    private SyncScheduler(Builder builder) {
+        mClock = builder.mClock;
+        mIntervalMillis = builder.mIntervalMillis;
+        mInitialBackoffMillis = builder.mInitialBackoffMillis;
+        mMaxBackoffMillis = builder.mMaxBackoffMillis;
+        mConstraintRetryMillis = builder.mConstraintRetryMillis;
+        mRequireUnmetered = builder.mRequireUnmetered;
+        mRequireCharging = builder.mRequireCharging;
+    }
+
+    /**
+     * Restores the state saved from {@link #getLastSuccess()}, {@link #getLastAttempt()} and
+     * {@link #getFailureCount()}.
+     *
+     * @param lastSuccess
+     * @param lastAttempt
+     * @param failureCount
+     */
+    public void restore(long lastSuccess, long lastAttempt, int failureCount) {
+        mLastSuccess = lastSuccess;
+        mLastAttempt = lastAttempt;
+        mFailureCount = failureCount;
+    }
+
+    /**
+     * Returns the time of the last successful sync, or <code>0</code> if there was none.
+     *
+     * @return
+     */
+    public long getLastSuccess() {
+        return mLastSuccess;
+    }
+
+    /**
+     * Returns the time of the last sync, successful or not, or <code>0</code> if there was none.
+     *
+     * @return
+     */
+    public long getLastAttempt() {
+        return mLastAttempt;
+    }
+
+    public int getFailureCount() {
+        return mFailureCount;
+    }
+
+    /**
+     * Returns the time the next sync is due. The time is in the past if a sync is already due. A
+     * sync recorded in the future, i.e. before the clock was set back, tells nothing about how
+     * long ago it ran, so the next sync is due right away rather than postponed.
+     *
+     * @return
+     */
+    public long getNextRunTime() {
+        long now = mClock.currentTimeMillis();
+        if (mFailureCount > 0) {
+            return mLastAttempt > now ? now : mLastAttempt + getBackoffMillis();
+        }
+        if (0 == mLastSuccess || mLastSuccess > now) {
+            return now;
+        }
+        return mLastSuccess + mIntervalMillis;
+    }
+
+    /**
+     * Returns the delay before the next attempt after the consecutive failures so far, or
+     * <code>0</code> if the last sync succeeded.
+     *
+     * @return
+     */
+    public long getBackoffMillis() {
+        if (0 == mFailureCount) {
+            return 0;
+        }
+        int doublings = Math.min(mFailureCount - 1, MAX_BACKOFF_DOUBLINGS);
+        return Math.min(mInitialBackoffMillis << doublings, mMaxBackoffMillis);
+    }
+
+    public boolean isDue() {
+        return mClock.currentTimeMillis() >= getNextRunTime();
+    }
+
+    /**
+     * Returns <code>true</code> if the device meets the constraints of the sync.
+     *
+     * @param unmetered <code>true</code> if connected to an unmetered network
+     * @param charging
+     * @return
+     */
+    public boolean meetsConstraints(boolean unmetered, boolean charging) {
+        return (unmetered || !mRequireUnmetered) && (charging || !mRequireCharging);
+    }
+
+    /**
+     * Returns <code>true</code> if a sync is due and the device meets its constraints.
+     *
+     * @param unmetered <code>true</code> if connected to an unmetered network
+     * @param charging
+     * @return
+     */
+    public boolean shouldRun(boolean unmetered, boolean charging) {
+        return isDue() && meetsConstraints(unmetered, charging);
+    }
+
+    /**
+     * Returns the time to check again whether to sync, given the current state of the device.
+     * Call it after {@link #onSuccess()} or {@link #onFailure()}, or after a sync was skipped.
+     *
+     * @param unmetered <code>true</code> if connected to an unmetered network
+     * @param charging
+     * @return
+     */
+    public long getNextCheckTime(boolean unmetered, boolean charging) {
+        long now = mClock.currentTimeMillis();
+        long next = getNextRunTime();
+        if (next > now) {
+            return next;
+        }
+        // due, but waiting for the constraints to be met
+        return meetsConstraints(unmetered, charging) ? now : now + mConstraintRetryMillis;
+    }
+
+    /**
+     * Records a successful sync, which resets the backoff.
+     */
+    public void onSuccess() {
+        mLastSuccess = mClock.currentTimeMillis();
+        mLastAttempt = mLastSuccess;
+        mFailureCount = 0;
+    }
+
+    /**
+     * Records a failed sync, which lengthens the backoff.
+     */
+    public void onFailure() {
+        mLastAttempt = mClock.currentTimeMillis();
+        mFailureCount++;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncScheduler: lastSuccess=" + mLastSuccess + " lastAttempt=" + mLastAttempt
+                + " failures=" + mFailureCount + " nextRun=" + getNextRunTime();
+    }
+
+    /**
+     * Builds a {@link SyncScheduler}.
+     */
+    public static class Builder {
+
+        private Clock mClock = SYSTEM_CLOCK;
+        private long mIntervalMillis = 4 * 60 * 60 * 1000;
+        private long mInitialBackoffMillis = 15 * 60 * 1000;
+        private long mMaxBackoffMillis = 4 * 60 * 60 * 1000;
+        private long mConstraintRetryMillis = 30 * 60 * 1000;
+        private boolean mRequireUnmetered = true;
+        private boolean mRequireCharging = true;
+
+        public Builder clock(Clock clock) {
+            mClock = clock;
+            return this;
+        }
+
+        /**
+         * @param intervalMillis time between successful syncs
+         */
+        public Builder interval(long intervalMillis) {
+            mIntervalMillis = intervalMillis;
+            return this;
+        }
+
+        /**
+         * @param initialBackoffMillis delay after the first failure, doubled after each
+         * consecutive failure
+         * @param maxBackoffMillis longest delay after failures
+         */
+        public Builder backoff(long initialBackoffMillis, long maxBackoffMillis) {
+            mInitialBackoffMillis = initialBackoffMillis;
+            mMaxBackoffMillis = maxBackoffMillis;
+            return this;
+        }
+
+        /**
+         * @param constraintRetryMillis delay before checking again whether a due sync can run
+         */
+        public Builder constraintRetry(long constraintRetryMillis) {
+            mConstraintRetryMillis = constraintRetryMillis;
+            return this;
+        }
+
+        /**
+         * @param requireUnmetered only sync on an unmetered network
+         * @param requireCharging only sync while charging
+         */
+        public Builder constraints(boolean requireUnmetered, boolean requireCharging) {
+            mRequireUnmetered = requireUnmetered;
+            mRequireCharging = requireCharging;
+            return this;
+        }
+
+        public SyncScheduler build() {
+            return new SyncScheduler(this);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import android.annotation.TargetApi;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link android.os.AsyncTask}s off the serial executor that
+ * {@link android.os.AsyncTask#execute(Object[])} uses from Honeycomb on, where a task waits for
+ * all the tasks started before it, including network calls that may retry for several seconds.
+ * CPU-bound tasks, e.g. formatting labels or indexing, run on a small pool of their own, and
+ * independent network calls run in parallel. Tasks that must run in order, e.g. registration
+ * changes, keep using {@link android.os.AsyncTask#execute(Object[])}. Before Honeycomb,
+ * {@link android.os.AsyncTask#execute(Object[])} already runs tasks in parallel.
+ */
+public class TaskExecutors {
+
+    /* leaves a core to the UI thread */
+    private static final int CPU_THREADS =
+            Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static final Executor sCpuExecutor = Executors.newFixedThreadPool(CPU_THREADS,
+            new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "cpu-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private TaskExecutors() {
+    }
+
+    /**
+     * Runs a CPU-bound task on the pool reserved for such tasks.
+     *
+     * @param task
+     */
+    public static void executeOnCpu(AsyncTask<Void, ?, ?> task) {
+        executeOn(task, sCpuExecutor);
+    }
+
+    /**
+     * Runs a task that makes network calls in parallel with other tasks.
+     *
+     * @param task
+     */
+    public static void executeParallel(AsyncTask<Void, ?, ?> task) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            executeOn(task, AsyncTask.THREAD_POOL_EXECUTOR);
+        } else {
+            task.execute();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void executeOn(AsyncTask<Void, ?, ?> task, Executor executor) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            task.executeOnExecutor(executor);
+        } else {
+            task.execute();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import android.util.Base64;
+import android.util.Log;
+
+import com.google.android.gms.auth.GoogleAuthException;
+import com.google.android.gms.auth.GoogleAuthUtil;
+import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpStatusCodes;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authorizes the requests of an account with an ID token kept in memory, instead of asking Play
+ * Services for a token before every request as {@link GoogleAccountCredential} does. The token is
+ * cached until shortly before the expiry written in it, and refreshed in the background before
+ * then as long as it is being used, so requests do not wait for a token once it has been warmed
+ * with {@link #warm()}. A request rejected with a <code>401</code> is retried once with a fresh
+ * token.
+ */
+public class TokenManager implements HttpRequestInitializer {
+
+    private static final String TAG = "TokenManager";
+
+    /* a token is not used any more this close to its expiry */
+    private static final long EXPIRY_MARGIN_MILLIS = 60 * 1000;
+
+    /* a token in use is refreshed this long before its expiry */
+    private static final long REFRESH_AHEAD_MILLIS = 5 * 60 * 1000;
+
+    /* delay before trying again after a failed background refresh */
+    private static final long REFRESH_RETRY_MILLIS = 30 * 1000;
+
+    /* lifetime assumed for a token whose expiry cannot be read, ID tokens last an hour */
+    private static final long DEFAULT_LIFETIME_MILLIS = 45 * 60 * 1000;
+
+    private static final ScheduledExecutorService sRefresher =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final GoogleAccountCredential mCredential;
+    private final JsonFactory mJsonFactory;
+
+    private volatile Token mToken;
+
+    /* set when the token is used, a refresh is only worth it for a token in use */
+    private volatile boolean mUsed;
+
+    private ScheduledFuture<?> mRefresh;
+    private boolean mClosed;
+
+    /**
+     * @param credential credential of the account, only used to get tokens from Play Services
+     * @param jsonFactory used to read the expiry of tokens
+     */
+    public TokenManager(GoogleAccountCredential credential, JsonFactory jsonFactory) {
+        mCredential = credential;
+        mJsonFactory = jsonFactory;
+    }
+
+    @Override
+    public void initialize(HttpRequest request) {
+        RequestHandler handler = new RequestHandler();
+        request.setInterceptor(handler);
+        request.setUnsuccessfulResponseHandler(handler);
+    }
+
+    /**
+     * Fetches a token if none is cached, and schedules its refresh. Blocks, call it off the UI
+     * thread, e.g. while checking the authorization of the account.
+     *
+     * @throws IOException if no token could be fetched
+     */
+    public void warm() throws IOException {
+        getToken();
+        mUsed = true;
+    }
+
+    /**
+     * Drops the cached token and stops refreshing it, e.g. when the account is cleared.
+     */
+    public synchronized void close() {
+        mClosed = true;
+        mToken = null;
+        if (null != mRefresh) {
+            mRefresh.cancel(false);
+            mRefresh = null;
+        }
+    }
+
+    /*
+     * Returns the cached token if it is still valid, or fetches a new one.
+     */
+    private String getToken() throws IOException {
+        Token token = mToken;
+        if (null != token && token.isValid()) {
+            return token.value;
+        }
+        synchronized (this) {
+            token = mToken;
+            if (null != token && token.isValid()) {
+                return token.value;
+            }
+            Log.d(TAG, "No valid token cached, fetching one");
+            return fetch(null).value;
+        }
+    }
+
+    /*
+     * Fetches a token from Play Services, invalidating the given one first so that a new one is
+     * issued instead of the one Play Services caches, and schedules its refresh.
+     */
+    private synchronized Token fetch(String stale) throws IOException {
+        try {
+            if (null != stale) {
+                GoogleAuthUtil.invalidateToken(mCredential.getContext(), stale);
+            }
+            String value = mCredential.getToken();
+            Token token = new Token(value, getExpiry(value));
+            if (!mClosed) {
+                mToken = token;
+                scheduleRefresh(token.expiry - REFRESH_AHEAD_MILLIS - System.currentTimeMillis());
+            }
+            return token;
+        } catch (GoogleAuthException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /*
+     * Drops the cached token if it is the given one, e.g. after the server rejected it.
+     */
+    private synchronized void invalidate(String value) {
+        Token token = mToken;
+        if (null != token && token.value.equals(value)) {
+            mToken = null;
+        }
+        GoogleAuthUtil.invalidateToken(mCredential.getContext(), value);
+    }
+
+    private synchronized void scheduleRefresh(long delayMillis) {
+        if (mClosed) {
+            return;
+        }
+        if (null != mRefresh) {
+            mRefresh.cancel(false);
+        }
+        mRefresh = sRefresher.schedule(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh() {
+        if (!mUsed) {
+            // the next request fetches a token if it needs one
+            Log.d(TAG, "Token unused since the last refresh, letting it expire");
+            return;
+        }
+        mUsed = false;
+        Token token = mToken;
+        try {
+            fetch(null == token ? null : token.value);
+            Log.d(TAG, "Token refreshed in the background");
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to refresh the token, trying again later", e);
+            mUsed = true;
+            scheduleRefresh(REFRESH_RETRY_MILLIS);
+        }
+    }
+
+    /*
+     * Reads the expiry of an ID token, a JWT whose payload holds it in seconds as "exp".
+     */
+    private long getExpiry(String value) {
+        String[] parts = value.split("\\.");
+        if (parts.length == 3) {
+            try {
+                String payload = new String(Base64.decode(parts[1],
+                        Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING), "UTF-8");
+                Object exp = mJsonFactory.fromString(payload, GenericJson.class).get("exp");
+                if (exp instanceof Number) {
+                    return ((Number) exp).longValue() * 1000;
+                }
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Token is not a valid JWT", e);
+            } catch (IOException e) {
+                Log.w(TAG, "Token is not a valid JWT", e);
+            }
+        }
+        return System.currentTimeMillis() + DEFAULT_LIFETIME_MILLIS;
+    }
+
+    private static class Token {
+
+        final String value;
+        final long expiry;
+
+        Token(String value, long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+
+        boolean isValid() {
+            return System.currentTimeMillis() < expiry - EXPIRY_MARGIN_MILLIS;
+        }
+    }
+
+    /*
+     * Authorizes a single request and retries it once if its token is rejected.
+     */
+    private class RequestHandler implements HttpExecuteInterceptor,
+            HttpUnsuccessfulResponseHandler {
+
+        private String mSentToken;
+        private boolean mRetried;
+
+        @Override
+        public void intercept(HttpRequest request) throws IOException {
+            mSentToken = getToken();
+            mUsed = true;
+            request.getHeaders().setAuthorization("Bearer " + mSentToken);
+        }
+
+        @Override
+        public boolean handleResponse(HttpRequest request, HttpResponse response,
+                boolean supportsRetry) {
+            if (response.getStatusCode() != HttpStatusCodes.STATUS_CODE_UNAUTHORIZED
+                    || mRetried || null == mSentToken) {
+                return false;
+            }
+            Log.d(TAG, "Token rejected, retrying with a fresh one");
+            mRetried = true;
+            invalidate(mSentToken);
+            return true;
+        }
+    }
+}
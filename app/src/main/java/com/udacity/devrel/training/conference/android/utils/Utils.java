@@ -17,11 +17,8 @@ package com.udacity.devrel.training.conference.android.utils;
 
 import com.google.android.gms.auth.GoogleAuthUtil;
 import com.google.android.gms.common.GooglePlayServicesUtil;
-import com.google.api.client.util.DateTime;
 import com.udacity.devrel.training.conference.android.R;
 
-import com.appspot.udacity_extras.conference.model.Conference;
-
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.app.Activity;
@@ -29,8 +26,14 @@ import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
 import android.preference.PreferenceManager;
+import android.support.v4.net.ConnectivityManagerCompat;
 import android.text.TextUtils;
 import android.text.format.DateUtils;
 
@@ -103,28 +106,47 @@ public class Utils {
      * @param conference
      * @return
      */
-    public static String getConferenceCard(Context context, Conference conference) {
+    public static String getConferenceCard(Context context, CompactConference conference) {
+        return getConferenceCard(context, conference, null);
+    }
+
+    /**
+     * Returns a detailed description of a conference, using its prepared date label if it has
+     * one.
+     *
+     * @param context
+     * @param conference
+     * @return
+     * @see ConferenceLabels
+     */
+    public static String getConferenceCard(Context context, DecoratedConference conference) {
+        return getConferenceCard(context, conference.getConference(),
+                ConferenceLabels.getDateLabel(context, conference));
+    }
+
+    private static String getConferenceCard(Context context, CompactConference conference,
+            String date) {
         StringBuffer sb = new StringBuffer();
         if (!TextUtils.isEmpty(conference.getDescription())) {
             sb.append(conference.getDescription() + "\n");
         }
 
-        if (null != conference.getStartDate()) {
-            sb.append("\n" + getConferenceDate(context, conference));
+        if (CompactConference.NO_DATE != conference.getStartDate()) {
+            sb.append("\n" + (null != date ? date : getConferenceDate(context, conference)));
         }
 
         if (!TextUtils.isEmpty(conference.getCity())) {
             sb.append("\n" + conference.getCity());
         }
 
-        if (null != conference.getMaxAttendees()) {
+        if (CompactConference.UNKNOWN != conference.getMaxAttendees()) {
             sb.append("\n" +
-                    context.getString(R.string.seats_max, conference.getMaxAttendees().intValue()));
+                    context.getString(R.string.seats_max, conference.getMaxAttendees()));
         }
 
-        if (null != conference.getSeatsAvailable()) {
+        if (CompactConference.UNKNOWN != conference.getSeatsAvailable()) {
             sb.append("\n" + context.getString(R.string.seats_available,
-                    conference.getSeatsAvailable().intValue()));
+                    conference.getSeatsAvailable()));
         }
         return sb.toString();
     }
@@ -136,12 +158,13 @@ public class Utils {
      * @param conference
      * @return
      */
-    public static String getConferenceDate(Context context, Conference conference) {
+    public static String getConferenceDate(Context context, CompactConference conference) {
         StringBuffer sb = new StringBuffer();
-        if (null != conference.getStartDate() && null != conference.getEndDate()) {
+        if (CompactConference.NO_DATE != conference.getStartDate()
+                && CompactConference.NO_DATE != conference.getEndDate()) {
             sb.append(getFormattedDateRange(context, conference.getStartDate(),
                     conference.getEndDate()));
-        } else if (null != conference.getStartDate()) {
+        } else if (CompactConference.NO_DATE != conference.getStartDate()) {
             sb.append(getFormattedDate(context, conference.getStartDate()));
         }
         return sb.toString();
@@ -151,12 +174,12 @@ public class Utils {
      * Returns a user-friendly localized date.
      *
      * @param context
-     * @param dateTime
+     * @param dateTime epoch milliseconds
      * @return
      */
-    public static String getFormattedDate(Context context, DateTime dateTime) {
+    public static String getFormattedDate(Context context, long dateTime) {
         Calendar cal = Calendar.getInstance();
-        cal.setTimeInMillis(dateTime.getValue());
+        cal.setTimeInMillis(dateTime);
         return DateUtils
                 .formatDateTime(context, cal.getTimeInMillis(),
                         DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_ABBREV_MONTH);
@@ -166,17 +189,17 @@ public class Utils {
      * Returns a user-friendly localized data range.
      *
      * @param context
-     * @param dateTimeStart
-     * @param dateTimeEnd
+     * @param dateTimeStart epoch milliseconds
+     * @param dateTimeEnd epoch milliseconds
      * @return
      */
-    public static String getFormattedDateRange(Context context, DateTime dateTimeStart,
-            DateTime dateTimeEnd) {
+    public static String getFormattedDateRange(Context context, long dateTimeStart,
+            long dateTimeEnd) {
         Calendar cal1 = Calendar.getInstance();
-        cal1.setTimeInMillis(dateTimeStart.getValue());
+        cal1.setTimeInMillis(dateTimeStart);
 
         Calendar cal2 = Calendar.getInstance();
-        cal2.setTimeInMillis(dateTimeEnd.getValue());
+        cal2.setTimeInMillis(dateTimeEnd);
         return DateUtils
                 .formatDateRange(context, cal1.getTimeInMillis(), cal2.getTimeInMillis(),
                         DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_ABBREV_MONTH);
@@ -224,21 +247,67 @@ public class Utils {
     }
 
     /**
-     * Displays error dialog when a network error occurs. Exits application when user confirms
-     * dialog.
+     * Displays error dialog when a network error occurs. The user can retry or dismiss the
+     * dialog, the application keeps running either way.
      *
      * @param context
+     * @param retry run when the user asks to try again, may be <code>null</code>
      */
-    public static void displayNetworkErrorMessage(Context context) {
-        new AlertDialog.Builder(
-                context).setTitle(R.string.api_error_title)
+    public static void displayNetworkErrorMessage(Context context, final Runnable retry) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(context)
+                .setTitle(R.string.api_error_title)
                 .setMessage(R.string.api_error_message)
-                .setCancelable(false)
-                .setPositiveButton(R.string.close, new DialogInterface.OnClickListener() {
-                            public void onClick(DialogInterface dialog, int id) {
-                                System.exit(0);
-                            }
-                        }
-                ).create().show();
+                .setNegativeButton(R.string.close, new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int id) {
+                        dialog.dismiss();
+                    }
+                });
+        if (null != retry) {
+            builder.setPositiveButton(R.string.retry, new DialogInterface.OnClickListener() {
+                public void onClick(DialogInterface dialog, int id) {
+                    retry.run();
+                }
+            });
+        }
+        builder.create().show();
+    }
+
+    /**
+     * Returns <code>true</code> if a network is connected.
+     *
+     * @param context
+     * @return
+     */
+    public static boolean isConnected(Context context) {
+        NetworkInfo network = getConnectivityManager(context).getActiveNetworkInfo();
+        return null != network && network.isConnected();
+    }
+
+    /**
+     * Returns <code>true</code> if a network is connected and it is not metered, e.g. Wi-Fi.
+     *
+     * @param context
+     * @return
+     */
+    public static boolean isUnmeteredConnected(Context context) {
+        return isConnected(context) && !ConnectivityManagerCompat.isActiveNetworkMetered(
+                getConnectivityManager(context));
+    }
+
+    /**
+     * Returns <code>true</code> if the device is plugged in to a power source.
+     *
+     * @param context
+     * @return
+     */
+    public static boolean isCharging(Context context) {
+        // the battery status is sticky, so no receiver is needed to read it
+        Intent battery = context.getApplicationContext().registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return null != battery && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private static ConnectivityManager getConnectivityManager(Context context) {
+        return (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
     }
 }
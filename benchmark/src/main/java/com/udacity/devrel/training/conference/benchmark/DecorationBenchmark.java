@@ -0,0 +1,74 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.benchmark;
+
+import com.udacity.devrel.training.conference.android.utils.CompactConference;
+import com.udacity.devrel.training.conference.android.utils.ConferenceQuery;
+import com.udacity.devrel.training.conference.android.utils.DecoratedConference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorates decoded conferences with the registration status of the user, as
+ * <code>ConferenceUtils.getConferences</code> does for every page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DecorationBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    int size;
+
+    private List<CompactConference> mConferences;
+    private Set<String> mRegisteredKeys;
+    private ConferenceQuery mSeatsAvailable;
+
+    @Setup
+    public void setUp() throws IOException {
+        mConferences = Fixtures.decode(Fixtures.collection(size));
+        mRegisteredKeys = Fixtures.registeredKeys(mConferences);
+        mSeatsAvailable = new ConferenceQuery.Builder().seatsAvailable().build();
+    }
+
+    @Benchmark
+    public List<DecoratedConference> allConferences() {
+        return DecoratedConference.decorate(ConferenceQuery.ALL, mConferences, mRegisteredKeys);
+    }
+
+    @Benchmark
+    public List<DecoratedConference> seatsAvailable() {
+        return DecoratedConference.decorate(mSeatsAvailable, mConferences, mRegisteredKeys);
+    }
+}
@@ -0,0 +1,128 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.benchmark;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.DateTime;
+import com.udacity.devrel.training.conference.android.utils.CompactConference;
+import com.udacity.devrel.training.conference.android.utils.ConferenceDecoder;
+import com.udacity.devrel.training.conference.android.utils.ConferenceQuery;
+import com.udacity.devrel.training.conference.android.utils.DecoratedConference;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Builds <code>ConferenceCollection</code> documents shaped like the ones the server returns.
+ * Fixtures are generated from a fixed seed, so every run measures the same data.
+ */
+final class Fixtures {
+
+    /**
+     * The JVM counterpart of {@code AppConstants.JSON_FACTORY}, which is an
+     * <code>AndroidJsonFactory</code> and cannot run outside a device.
+     */
+    static final JsonFactory JSON_FACTORY = new JacksonFactory();
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] CITIES = {"London", "Chicago", "San Francisco", "Paris",
+            "Tokyo", "Berlin", "S\u00e3o Paulo", "Sydney", "Bangalore", "Toronto"};
+    private static final String[] TOPICS = {"Medical Innovations", "Programming Languages",
+            "Web Technologies", "Movie Making", "Health and Nutrition", "Cloud", "Mobile"};
+    private static final String[] ORGANIZERS = {"Ada", "Grace", "Linus", "Barbara", "Ken",
+            "Margaret", "Dennis", "Frances"};
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long EPOCH = 1420070400000L;
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns a UTF-8 encoded collection of <code>size</code> conferences.
+     */
+    static byte[] collection(int size) {
+        Random random = new Random(size);
+        StringBuilder json = new StringBuilder(size * 400);
+        json.append("{\"items\":[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            long start = EPOCH + random.nextInt(730) * DAY;
+            int maxAttendees = 10 + random.nextInt(500);
+            json.append("{\"name\":\"Conference ").append(i)
+                    .append("\",\"description\":\"A conference about ")
+                    .append(TOPICS[random.nextInt(TOPICS.length)].toLowerCase())
+                    .append(", with talks, workshops and plenty of time to meet other attendees.")
+                    .append("\",\"topics\":[\"").append(TOPICS[random.nextInt(TOPICS.length)])
+                    .append("\",\"").append(TOPICS[random.nextInt(TOPICS.length)])
+                    .append("\"],\"city\":\"").append(CITIES[random.nextInt(CITIES.length)])
+                    .append("\",\"startDate\":\"").append(new DateTime(start).toStringRfc3339())
+                    .append("\",\"endDate\":\"")
+                    .append(new DateTime(start + random.nextInt(4) * DAY).toStringRfc3339())
+                    .append("\",\"month\":").append(month(start))
+                    .append(",\"maxAttendees\":").append(maxAttendees)
+                    .append(",\"seatsAvailable\":").append(random.nextInt(maxAttendees + 1))
+                    .append(",\"organizerDisplayName\":\"")
+                    .append(ORGANIZERS[random.nextInt(ORGANIZERS.length)])
+                    .append("\",\"id\":\"").append(5629499534213120L + i)
+                    .append("\",\"websafeKey\":\"ahNzfnVkYWNpdHktZXh0cmFzcjMLEgdQcm9maWxl")
+                    .append(i).append("\",\"kind\":\"conference#resourcesItem\"}");
+        }
+        json.append("],\"kind\":\"conference#resources\",\"etag\":\"\\\"fixture\\\"\"}");
+        return json.toString().getBytes(UTF_8);
+    }
+
+    private static int month(long time) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(time);
+        return calendar.get(Calendar.MONTH) + 1;
+    }
+
+    /**
+     * Decodes a collection built by {@link #collection(int)}.
+     */
+    static List<CompactConference> decode(byte[] json) throws IOException {
+        return new ConferenceDecoder().decodeCollection(
+                JSON_FACTORY.createJsonParser(new ByteArrayInputStream(json), UTF_8));
+    }
+
+    /**
+     * Returns the websafe keys of every tenth conference, as if the user registered for them.
+     */
+    static Set<String> registeredKeys(List<CompactConference> conferences) {
+        Set<String> keys = new HashSet<String>();
+        for (int i = 0; i < conferences.size(); i += 10) {
+            keys.add(conferences.get(i).getWebsafeKey());
+        }
+        return keys;
+    }
+
+    static List<DecoratedConference> decorate(byte[] json) throws IOException {
+        List<CompactConference> conferences = decode(json);
+        return DecoratedConference.decorate(ConferenceQuery.ALL, conferences,
+                registeredKeys(conferences));
+    }
+}
@@ -0,0 +1,97 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.benchmark;
+
+import com.appspot.udacity_extras.conference.model.ConferenceCollection;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Measures how many bytes of heap a decoded conference retains, for the generated model and for
+ * the compact conferences of the streaming decoder. JMH reports what parsing allocates (see
+ * {@link JsonParsingBenchmark} with <code>-prof gc</code>), not what stays reachable afterwards,
+ * so this compares the used heap after a full collection before and after decoding. Run with:
+ * <pre>
+ *     ./gradlew :benchmark:footprint
+ * </pre>
+ */
+public final class FootprintMeasurement {
+
+    /* smaller collections are lost in the noise of the heap measurement */
+    private static final int[] SIZES = {10000, 100000};
+    private static final int RUNS = 7;
+
+    private FootprintMeasurement() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("conferences  generated model  streaming decoder  (bytes/conference)");
+        for (int size : SIZES) {
+            byte[] json = Fixtures.collection(size);
+            long[] generated = new long[RUNS];
+            long[] compact = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                generated[i] = retained(json, true);
+                compact[i] = retained(json, false);
+            }
+            System.out.println(String.format("%11d  %15d  %17d", size,
+                    median(generated) / size, median(compact) / size));
+        }
+    }
+
+    /**
+     * Returns the bytes retained by the conferences decoded from <code>json</code>.
+     *
+     * @param json
+     * @param generatedModel whether to decode into the generated model
+     * @return
+     */
+    private static long retained(byte[] json, boolean generatedModel) throws IOException {
+        long before = usedHeap();
+        Object decoded = generatedModel
+                ? Fixtures.JSON_FACTORY.fromInputStream(new ByteArrayInputStream(json),
+                        Fixtures.UTF_8, ConferenceCollection.class).getItems()
+                : Fixtures.decode(json);
+        long after = usedHeap();
+        // keeps the conferences reachable until the heap has been measured
+        if (null == decoded) {
+            throw new IllegalStateException();
+        }
+        return after - before;
+    }
+
+    private static long median(long[] values) {
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // a single System.gc() is only a hint, so collect until the used heap settles
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long current = runtime.totalMemory() - runtime.freeMemory();
+            if (current >= used) {
+                return current;
+            }
+            used = current;
+        }
+        return used;
+    }
+}
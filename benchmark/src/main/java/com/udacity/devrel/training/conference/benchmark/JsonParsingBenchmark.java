@@ -0,0 +1,73 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.benchmark;
+
+import com.appspot.udacity_extras.conference.model.ConferenceCollection;
+import com.udacity.devrel.training.conference.android.utils.CompactConference;
+import com.udacity.devrel.training.conference.android.utils.ConferenceDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a <code>ConferenceCollection</code> response, both into the generated model, as the
+ * client library does, and straight into compact conferences with the streaming decoder the app
+ * uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonParsingBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    int size;
+
+    private byte[] mJson;
+
+    @Setup
+    public void setUp() {
+        mJson = Fixtures.collection(size);
+    }
+
+    @Benchmark
+    public ConferenceCollection generatedModel() throws IOException {
+        return Fixtures.JSON_FACTORY.fromInputStream(new ByteArrayInputStream(mJson),
+                Fixtures.UTF_8, ConferenceCollection.class);
+    }
+
+    @Benchmark
+    public List<CompactConference> streamingDecoder() throws IOException {
+        return new ConferenceDecoder().decodeCollection(Fixtures.JSON_FACTORY.createJsonParser(
+                new ByteArrayInputStream(mJson), Fixtures.UTF_8));
+    }
+}
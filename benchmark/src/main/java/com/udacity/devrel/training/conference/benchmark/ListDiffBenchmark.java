@@ -0,0 +1,81 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.benchmark;
+
+import com.udacity.devrel.training.conference.android.utils.ConferenceListDiff;
+import com.udacity.devrel.training.conference.android.utils.DecoratedConference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a refreshed list of conferences with the shown one, the work
+ * <code>ConferenceDataAdapter.setData</code> does before refreshing the list: the snapshot on the
+ * UI thread and the comparison off it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ListDiffBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    int size;
+
+    private List<DecoratedConference> mShown;
+    private List<DecoratedConference> mUnchanged;
+    private List<DecoratedConference> mOneSeatTaken;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] json = Fixtures.collection(size);
+        mShown = Fixtures.decorate(json);
+        // decoded again, so the refreshed conferences are equal but not the same instances
+        mUnchanged = Fixtures.decorate(json);
+        mOneSeatTaken = new ArrayList<DecoratedConference>(Fixtures.decorate(json));
+        int middle = size / 2;
+        DecoratedConference changed = mOneSeatTaken.get(middle);
+        mOneSeatTaken.set(middle, new DecoratedConference(changed.getConference()
+                .withSeatsAvailable(changed.getConference().getSeatsAvailable() + 1),
+                changed.isRegistered()));
+    }
+
+    @Benchmark
+    public ConferenceListDiff unchanged() {
+        return new ConferenceListDiff(mShown, mUnchanged).compute();
+    }
+
+    @Benchmark
+    public ConferenceListDiff oneSeatTaken() {
+        return new ConferenceListDiff(mShown, mOneSeatTaken).compute();
+    }
+}
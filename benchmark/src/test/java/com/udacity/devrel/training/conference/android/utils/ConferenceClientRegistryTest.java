@@ -0,0 +1,211 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.appspot.udacity_extras.conference.Conference;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stresses the registry from several threads at once, the way sign-in, account switches and
+ * background tasks use it, and checks that threads always agree on the client of an account and
+ * on which account is current.
+ */
+public class ConferenceClientRegistryTest {
+
+    private static final int THREADS = 8;
+    private static final int ACCOUNTS = 200;
+    private static final int SWITCHES = 20000;
+
+    private ConferenceClientRegistry mRegistry;
+    private ExecutorService mExecutor;
+    /* registered for every account where which client wins does not matter */
+    private Conference mClient;
+
+    @Before
+    public void setUp() {
+        mRegistry = new ConferenceClientRegistry();
+        mExecutor = Executors.newFixedThreadPool(THREADS);
+        mClient = newClient();
+    }
+
+    @Test
+    public void concurrentRegistrationsAgreeOnOneClient() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Conference[]>> results = new ArrayList<Future<Conference[]>>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(mExecutor.submit(new Callable<Conference[]>() {
+                @Override
+                public Conference[] call() throws Exception {
+                    Conference[] registered = new Conference[ACCOUNTS];
+                    start.await();
+                    for (int i = 0; i < ACCOUNTS; i++) {
+                        registered[i] = mRegistry.register(account(i), newClient());
+                    }
+                    return registered;
+                }
+            }));
+        }
+        start.countDown();
+
+        for (Future<Conference[]> result : results) {
+            Conference[] registered = result.get(30, TimeUnit.SECONDS);
+            for (int i = 0; i < ACCOUNTS; i++) {
+                // every thread gets the client that won, and it stays registered
+                assertSame(mRegistry.getClient(account(i)), registered[i]);
+            }
+        }
+        shutdown();
+    }
+
+    @Test
+    public void switchesHandOverEveryAccountOnce() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            results.add(mExecutor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    // each switch makes a new account current, so each is handed over once
+                    String[] accounts = new String[SWITCHES];
+                    for (int i = 0; i < SWITCHES; i++) {
+                        accounts[i] = account(thread * SWITCHES + i);
+                    }
+                    String[] previous = new String[SWITCHES];
+                    start.await();
+                    for (int i = 0; i < SWITCHES; i++) {
+                        mRegistry.register(accounts[i], mClient);
+                        previous[i] = mRegistry.setCurrentAccount(accounts[i]);
+                    }
+                    return Arrays.asList(previous);
+                }
+            }));
+        }
+        start.countDown();
+
+        // every account made current is handed over exactly once, by the next switch or as the
+        // final current account, and the initial null once
+        Map<String, Integer> handedOver = new HashMap<String, Integer>();
+        for (Future<List<String>> result : results) {
+            for (String account : result.get(30, TimeUnit.SECONDS)) {
+                Integer count = handedOver.get(account);
+                handedOver.put(account, null == count ? 1 : count + 1);
+            }
+        }
+        String current = mRegistry.getCurrentAccount();
+        assertNotNull(current);
+        assertNull(handedOver.put(current, 1));
+        assertEquals(THREADS * SWITCHES + 1, handedOver.size());
+        for (Integer count : handedOver.values()) {
+            assertEquals(Integer.valueOf(1), count);
+        }
+        shutdown();
+    }
+
+    @Test
+    public void readersNeverSeeCurrentAccountWithoutClient() throws Exception {
+        mRegistry.register(account(0), mClient);
+        mRegistry.setCurrentAccount(account(0));
+        final AtomicBoolean done = new AtomicBoolean();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < THREADS - 2; t++) {
+            readers.add(mExecutor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int missing = 0;
+                    start.await();
+                    while (!done.get()) {
+                        if (null == mRegistry.getCurrentClient()) {
+                            missing++;
+                        }
+                    }
+                    return missing;
+                }
+            }));
+        }
+        List<Future<Integer>> writers = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < 2; t++) {
+            final int thread = t;
+            writers.add(mExecutor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    Random random = new Random(thread);
+                    start.await();
+                    for (int i = 0; i < SWITCHES; i++) {
+                        // a new account half of the time, an account seen before otherwise
+                        String account = random.nextBoolean()
+                                ? account(1 + thread * SWITCHES + i)
+                                : account(random.nextInt(ACCOUNTS));
+                        mRegistry.register(account, mClient);
+                        mRegistry.setCurrentAccount(account);
+                    }
+                    return 0;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<Integer> writer : writers) {
+            writer.get(30, TimeUnit.SECONDS);
+        }
+        done.set(true);
+
+        for (Future<Integer> reader : readers) {
+            assertEquals(Integer.valueOf(0), reader.get(30, TimeUnit.SECONDS));
+        }
+        assertSame(mRegistry.getClient(mRegistry.getCurrentAccount()),
+                mRegistry.getCurrentClient());
+        shutdown();
+    }
+
+    private void shutdown() throws InterruptedException {
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private static String account(int i) {
+        return "user" + i + "@example.com";
+    }
+
+    private static Conference newClient() {
+        return new Conference.Builder(new MockHttpTransport(), new JacksonFactory(), null)
+                .setApplicationName("conference-central-server")
+                .build();
+    }
+}
@@ -0,0 +1,90 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks which conferences of a refreshed list adopt the instance already shown, including
+ * when the UI thread updates a conference between the snapshot and the apply.
+ */
+public class ConferenceListDiffTest {
+
+    @Test
+    public void unchangedConferencesShareTheShownInstance() {
+        List<DecoratedConference> shown = list(conference("a", 5), conference("b", 5));
+        List<DecoratedConference> data = list(conference("b", 5), conference("a", 4),
+                conference("c", 5));
+
+        List<DecoratedConference> applied = new ConferenceListDiff(shown, data).compute().apply();
+
+        assertEquals(3, applied.size());
+        assertSame(shown.get(1).getConference(), applied.get(0).getConference());
+        assertNotSame(shown.get(0).getConference(), applied.get(1).getConference());
+        assertEquals(4, applied.get(1).getConference().getSeatsAvailable());
+        assertEquals("c", applied.get(2).getConference().getWebsafeKey());
+    }
+
+    @Test
+    public void updateAfterTheSnapshotIsKept() {
+        List<DecoratedConference> shown = list(conference("a", 5));
+        List<DecoratedConference> data = list(conference("a", 5));
+
+        ConferenceListDiff diff = new ConferenceListDiff(shown, data);
+        // the user registers while the diff is computed off the UI thread
+        data.get(0).applyRegistration(true);
+        List<DecoratedConference> applied = diff.compute().apply();
+
+        assertTrue(applied.get(0).isRegistered());
+        assertEquals(4, applied.get(0).getConference().getSeatsAvailable());
+    }
+
+    @Test
+    public void laterChangesToTheListsDoNotAffectTheDiff() {
+        List<DecoratedConference> shown = list(conference("a", 5));
+        List<DecoratedConference> data = list(conference("a", 5));
+        CompactConference shownConference = shown.get(0).getConference();
+
+        ConferenceListDiff diff = new ConferenceListDiff(shown, data);
+        shown.clear();
+        data.add(conference("b", 5));
+        List<DecoratedConference> applied = diff.compute().apply();
+
+        assertEquals(1, applied.size());
+        assertSame(shownConference, applied.get(0).getConference());
+    }
+
+    private static DecoratedConference conference(String key, int seatsAvailable) {
+        return new DecoratedConference(new CompactConference(key, "Conference " + key, null,
+                "Ada", "London", new String[]{"Cloud"}, 0, 0, 1, 10, seatsAvailable), false);
+    }
+
+    private static List<DecoratedConference> list(DecoratedConference... conferences) {
+        List<DecoratedConference> list = new ArrayList<DecoratedConference>();
+        for (DecoratedConference conference : conferences) {
+            list.add(conference);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,146 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that binding list rows allocates nothing in steady state, as measured by the
+ * allocation counter of the current thread, and that rows are only bound again for what changed.
+ */
+public class ConferenceRowStateTest {
+
+    private static final int ROWS = 1000;
+    private static final int VISIBLE_ROWS = 12;
+    private static final int BINDS = 200000;
+
+    /* average bytes a bind may allocate, the measurement itself allocates a few bytes */
+    private static final double ALLOCATION_BUDGET_PER_BIND = 0.5;
+
+    private List<DecoratedConference> mConferences;
+
+    @Before
+    public void setUp() {
+        mConferences = new ArrayList<DecoratedConference>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            CompactConference conference = new CompactConference("key" + i, "Conference " + i,
+                    null, "Organizer", "London", new String[]{"Cloud"}, 0, 0, 1, 100, 10);
+            DecoratedConference decorated = new DecoratedConference(conference, i % 10 == 0);
+            decorated.setLabels("Jan 1", "London, Jan 1", 0);
+            mConferences.add(decorated);
+        }
+    }
+
+    @Test
+    public void scrollingBindsWithinAllocationBudget() {
+        ConferenceRowState[] rows = newRows();
+        // lets the JIT compile the binding path before it is measured
+        scroll(rows, BINDS);
+        long allocated = allocatedBytes();
+        int checksum = scroll(rows, BINDS);
+        allocated = allocatedBytes() - allocated;
+        assertTrue(checksum > 0);
+        assertWithinBudget(allocated);
+    }
+
+    @Test
+    public void rebindingUnchangedRowsChangesNothingAndAllocatesNothing() {
+        ConferenceRowState[] rows = newRows();
+        rebind(rows, VISIBLE_ROWS);
+        long allocated = allocatedBytes();
+        int changed = rebind(rows, BINDS);
+        allocated = allocatedBytes() - allocated;
+        assertEquals(0, changed);
+        assertWithinBudget(allocated);
+    }
+
+    @Test
+    public void reportsOnlyTheChangedParts() {
+        ConferenceRowState row = new ConferenceRowState();
+        DecoratedConference decorated = mConferences.get(1);
+        assertEquals(ConferenceRowState.CONTENT, row.update(decorated, 0, false));
+        assertEquals(0, row.update(decorated, 0, false));
+        assertEquals(ConferenceRowState.SELECTION, row.update(decorated, 0, true));
+        assertEquals(ConferenceRowState.CONTENT, row.update(decorated, 1, true));
+
+        decorated.applyRegistration(true);
+        assertEquals(ConferenceRowState.CONTENT | ConferenceRowState.REGISTRATION,
+                row.update(decorated, 1, true));
+        assertTrue(row.isRegistered());
+        assertTrue(row.isSelected());
+    }
+
+    private static ConferenceRowState[] newRows() {
+        ConferenceRowState[] rows = new ConferenceRowState[VISIBLE_ROWS];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ConferenceRowState();
+        }
+        return rows;
+    }
+
+    /*
+     * Binds the conferences in order to recycled rows, as a list being scrolled does, and reads
+     * what the adapter shows for the parts that changed.
+     */
+    private int scroll(ConferenceRowState[] rows, int binds) {
+        int checksum = 0;
+        for (int i = 0; i < binds; i++) {
+            DecoratedConference decorated = mConferences.get(i % ROWS);
+            int changed = rows[i % rows.length].update(decorated, 0, false);
+            if ((changed & ConferenceRowState.CONTENT) != 0) {
+                checksum += decorated.getConference().getName().length()
+                        + decorated.getCityAndDateLabel(0).length();
+            }
+        }
+        return checksum;
+    }
+
+    /*
+     * Binds the visible conferences to the same rows again, as a layout pass does.
+     */
+    private int rebind(ConferenceRowState[] rows, int binds) {
+        int changed = 0;
+        for (int i = 0; i < binds; i++) {
+            int row = i % rows.length;
+            changed |= rows[row].update(mConferences.get(row), 0, false);
+        }
+        return changed;
+    }
+
+    private static void assertWithinBudget(long allocated) {
+        double perBind = (double) allocated / BINDS;
+        assertTrue("Binding allocated " + perBind + " bytes per row",
+                perBind <= ALLOCATION_BUDGET_PER_BIND);
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported()
+                && threads.isThreadAllocatedMemoryEnabled());
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,90 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Checks the incremental updates of the search index: adding, replacing and removing one
+ * conference, and indexing the full record of a conference listed with its list fields only.
+ */
+public class ConferenceSearchIndexTest {
+
+    private ConferenceSearchIndex mIndex;
+    private DecoratedConference mListed;
+
+    @Before
+    public void setUp() {
+        mIndex = new ConferenceSearchIndex();
+        // the list fields do not include the description
+        mListed = decorated("a", "Caf\u00e9 Summit", null);
+        mIndex.add(mListed);
+        mIndex.add(decorated("b", "Cloud Days", null));
+    }
+
+    @Test
+    public void findsConferencesByNamePrefixWithoutAccents() {
+        List<DecoratedConference> results = mIndex.search("cafe sum");
+        assertEquals(1, results.size());
+        assertSame(mListed, results.get(0));
+    }
+
+    @Test
+    public void fullRecordMakesTheDescriptionSearchable() {
+        assertTrue(mIndex.search("espresso").isEmpty());
+
+        mIndex.update(record("a", "Caf\u00e9 Summit", "All about espresso"));
+
+        List<DecoratedConference> results = mIndex.search("espresso");
+        assertEquals(1, results.size());
+        // searches keep returning the listed conference, not the record
+        assertSame(mListed, results.get(0));
+        assertEquals(1, mIndex.search("summit").size());
+    }
+
+    @Test
+    public void updateOfAConferenceNotIndexedDoesNothing() {
+        mIndex.update(record("c", "Espresso Days", null));
+        assertTrue(mIndex.search("espresso").isEmpty());
+    }
+
+    @Test
+    public void addReplacesAndRemoveDropsOneConference() {
+        mIndex.add(decorated("b", "Mobile Days", null));
+        assertTrue(mIndex.search("cloud").isEmpty());
+        assertEquals(1, mIndex.search("mobile").size());
+
+        mIndex.remove("b");
+        assertTrue(mIndex.search("days").isEmpty());
+        assertEquals(1, mIndex.search("summit").size());
+    }
+
+    private static DecoratedConference decorated(String key, String name, String description) {
+        return new DecoratedConference(record(key, name, description), false);
+    }
+
+    private static CompactConference record(String key, String name, String description) {
+        return new CompactConference(key, name, description, "Ada", "London",
+                new String[]{"Cloud"}, 0, 0, 1, 10, 5);
+    }
+}
@@ -0,0 +1,223 @@
+/* Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.udacity.devrel.training.conference.android.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the decisions of the sync scheduler against a fake clock: the interval between
+ * successful syncs, the backoff after failures, a clock set back in time and the constraints.
+ */
+public class SyncSchedulerTest {
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+
+    private static final long INTERVAL = 4 * HOUR;
+    private static final long INITIAL_BACKOFF = 15 * MINUTE;
+    private static final long MAX_BACKOFF = 4 * HOUR;
+    private static final long CONSTRAINT_RETRY = 30 * MINUTE;
+
+    /* far from the epoch, so that 0 is never mistaken for a sync time */
+    private static final long START = 1000 * HOUR;
+
+    private FakeClock mClock;
+    private SyncScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock(START);
+        mScheduler = new SyncScheduler.Builder()
+                .clock(mClock)
+                .interval(INTERVAL)
+                .backoff(INITIAL_BACKOFF, MAX_BACKOFF)
+                .constraintRetry(CONSTRAINT_RETRY)
+                .constraints(true, true)
+                .build();
+    }
+
+    @Test
+    public void firstSyncIsDueRightAway() {
+        assertTrue(mScheduler.isDue());
+        assertEquals(START, mScheduler.getNextRunTime());
+    }
+
+    @Test
+    public void successWaitsForTheInterval() {
+        mScheduler.onSuccess();
+        assertEquals(START + INTERVAL, mScheduler.getNextRunTime());
+
+        mClock.advance(INTERVAL - 1);
+        assertFalse(mScheduler.isDue());
+        assertFalse(mScheduler.shouldRun(true, true));
+
+        mClock.advance(1);
+        assertTrue(mScheduler.isDue());
+        assertTrue(mScheduler.shouldRun(true, true));
+    }
+
+    @Test
+    public void backoffDoublesWithEachFailureUpToTheMaximum() {
+        long[] expected = new long[]{15 * MINUTE, 30 * MINUTE, HOUR, 2 * HOUR, 4 * HOUR,
+                4 * HOUR};
+        for (long backoff : expected) {
+            mScheduler.onFailure();
+            assertEquals(backoff, mScheduler.getBackoffMillis());
+            assertEquals(mClock.currentTimeMillis() + backoff, mScheduler.getNextRunTime());
+
+            mClock.advance(backoff - 1);
+            assertFalse(mScheduler.isDue());
+            mClock.advance(1);
+            assertTrue(mScheduler.isDue());
+        }
+    }
+
+    @Test
+    public void backoffDoesNotOverflowAfterManyFailures() {
+        for (int i = 0; i < 100; i++) {
+            mScheduler.onFailure();
+            assertTrue(mScheduler.getBackoffMillis() > 0);
+            assertTrue(mScheduler.getBackoffMillis() <= MAX_BACKOFF);
+        }
+        assertEquals(MAX_BACKOFF, mScheduler.getBackoffMillis());
+    }
+
+    @Test
+    public void successResetsTheBackoff() {
+        mScheduler.onFailure();
+        mScheduler.onFailure();
+        mClock.advance(HOUR);
+        mScheduler.onSuccess();
+
+        assertEquals(0, mScheduler.getFailureCount());
+        assertEquals(0, mScheduler.getBackoffMillis());
+        assertEquals(START + HOUR + INTERVAL, mScheduler.getNextRunTime());
+
+        mScheduler.onFailure();
+        assertEquals(INITIAL_BACKOFF, mScheduler.getBackoffMillis());
+    }
+
+    @Test
+    public void clockSetBackDoesNotPostponeTheSync() {
+        mScheduler.onSuccess();
+        mClock.set(START - 24 * HOUR);
+
+        // the success seems to lie in the future, so how long ago it ran is unknown
+        assertTrue(mScheduler.isDue());
+        assertEquals(START - 24 * HOUR, mScheduler.getNextRunTime());
+
+        // the next success restarts the interval from the new time
+        mScheduler.onSuccess();
+        assertEquals(START - 24 * HOUR + INTERVAL, mScheduler.getNextRunTime());
+        mClock.advance(INTERVAL);
+        assertTrue(mScheduler.isDue());
+    }
+
+    @Test
+    public void clockSetBackDoesNotPostponeTheRetry() {
+        mScheduler.onFailure();
+        mClock.set(START - 24 * HOUR);
+        assertTrue(mScheduler.isDue());
+
+        // a retry that fails again backs off from the new time
+        mScheduler.onFailure();
+        assertEquals(START - 24 * HOUR + 2 * INITIAL_BACKOFF, mScheduler.getNextRunTime());
+        mClock.advance(2 * INITIAL_BACKOFF);
+        assertTrue(mScheduler.isDue());
+    }
+
+    @Test
+    public void dueSyncWaitsForConstraints() {
+        assertTrue(mScheduler.isDue());
+        assertFalse(mScheduler.shouldRun(false, true));
+        assertFalse(mScheduler.shouldRun(true, false));
+        assertFalse(mScheduler.shouldRun(false, false));
+        assertTrue(mScheduler.shouldRun(true, true));
+
+        // checked again after the retry delay while a constraint is not met
+        assertEquals(START + CONSTRAINT_RETRY, mScheduler.getNextCheckTime(false, true));
+        assertEquals(START + CONSTRAINT_RETRY, mScheduler.getNextCheckTime(true, false));
+        assertEquals(START, mScheduler.getNextCheckTime(true, true));
+    }
+
+    @Test
+    public void syncNotDueIsCheckedAtItsRunTime() {
+        mScheduler.onSuccess();
+        mClock.advance(HOUR);
+
+        // the constraints only matter once the sync is due
+        assertEquals(START + INTERVAL, mScheduler.getNextCheckTime(false, false));
+        assertEquals(START + INTERVAL, mScheduler.getNextCheckTime(true, true));
+
+        mScheduler.onFailure();
+        assertEquals(START + HOUR + INITIAL_BACKOFF, mScheduler.getNextCheckTime(false, false));
+    }
+
+    @Test
+    public void constraintsCanBeLifted() {
+        SyncScheduler scheduler = new SyncScheduler.Builder()
+                .clock(mClock)
+                .constraints(false, false)
+                .build();
+        assertTrue(scheduler.shouldRun(false, false));
+        assertEquals(START, scheduler.getNextCheckTime(false, false));
+    }
+
+    @Test
+    public void restoredStateKeepsTheSchedule() {
+        mScheduler.onSuccess();
+        mClock.advance(INTERVAL);
+        mScheduler.onFailure();
+        mScheduler.onFailure();
+
+        SyncScheduler restored = new SyncScheduler.Builder()
+                .clock(mClock)
+                .interval(INTERVAL)
+                .backoff(INITIAL_BACKOFF, MAX_BACKOFF)
+                .build();
+        restored.restore(mScheduler.getLastSuccess(), mScheduler.getLastAttempt(),
+                mScheduler.getFailureCount());
+        assertEquals(mScheduler.getNextRunTime(), restored.getNextRunTime());
+        assertEquals(2 * INITIAL_BACKOFF, restored.getBackoffMillis());
+    }
+
+    private static class FakeClock implements SyncScheduler.Clock {
+
+        private long mNow;
+
+        FakeClock(long now) {
+            mNow = now;
+        }
+
+        void advance(long millis) {
+            mNow += millis;
+        }
+
+        void set(long now) {
+            mNow = now;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}